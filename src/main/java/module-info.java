@@ -1,10 +1,14 @@
 open module twyn {
-    requires guava;
-    requires java.compiler;
+    requires static guava;
+    requires static java.compiler;
     requires com.fasterxml.jackson.core;
     requires com.fasterxml.jackson.databind;
-    requires compilation.toolbox;
+    requires static compilation.toolbox;
     requires java.logging;
 
     exports se.jsa.twyn;
+    exports se.jsa.twyn.spi;
+
+    // prebuilt proxies extend internal classes, so indexes are only provided by code on the class path
+    uses se.jsa.twyn.internal.proxy.cg.TwynProxyIndex;
 }
\ No newline at end of file
@@ -15,31 +15,31 @@
  */
 package se.jsa.twyn;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import se.jsa.twyn.internal.*;
-import se.jsa.twyn.internal.datamodel.CollectionNode;
-import se.jsa.twyn.internal.datamodel.ContainerNode;
 import se.jsa.twyn.internal.datamodel.Node;
 import se.jsa.twyn.internal.datamodel.NodeProducer;
 import se.jsa.twyn.internal.datamodel.json.TwynJsonNodeProducer;
 import se.jsa.twyn.internal.proxy.TwynProxyBuilder;
+import se.jsa.twyn.internal.proxy.TwynTieredProxyBuilder;
 import se.jsa.twyn.internal.proxy.cg.TwynProxyClassBuilder;
+import se.jsa.twyn.internal.proxy.common.ReachableInterfaces;
 import se.jsa.twyn.internal.proxy.reflect.TwynProxyInvocationHandlerBuilder;
-import se.jsa.twyn.internal.readmodel.ProxiedInterface;
-import se.jsa.twyn.internal.readmodel.reflect.ProxiedInterfaceClass;
+import se.jsa.twyn.internal.proxy.stream.StreamReaders;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
+import java.util.function.IntFunction;
 
 public class Twyn {
     private final TwynContext twynContext;
@@ -72,19 +72,44 @@ public class Twyn {
         return read(twynContext.getNodeProducer().read(url, type), type);
     }
 
+    /**
+     * Reads the bytes from position to limit of the buffer, leaving the buffer unchanged. Heap and direct buffers are
+     * parsed in place, without first being copied into an array, except with lazy parsing.
+     */
+    public <T> T read(ByteBuffer buffer, Class<T> type) throws IOException {
+        return read(twynContext.getNodeProducer().read(buffer, type), type);
+    }
+
+    /**
+     * Reads the bytes from position to limit of each buffer in turn, as one document, leaving the buffers unchanged.
+     */
+    public <T> T read(ByteBuffer[] buffers, Class<T> type) throws IOException {
+        return read(twynContext.getNodeProducer().read(buffers, type), type);
+    }
+
+    /**
+     * The file is memory mapped and read in place, as with lazy parsing, so that files far larger than the heap can be
+     * read. Values are decoded from the mapping as they are read. Apart from the nodes read, the heap only holds an
+     * index of the objects and arrays spanning 64 KiB or more. The file must not change while its proxies are in
+     * use, and modifying a proxy parses the whole file into the heap.
+     */
+    public <T> T read(Path path, Class<T> type) throws IOException {
+        return read(twynContext.getNodeProducer().read(path, type), type);
+    }
+
+    /**
+     * Reads an immutable value straight from the tokens of the parser, without building a node tree first. Requires
+     * that the type was compiled with @TwynProxy(streaming = true). The parser should be created by an ObjectMapper,
+     * which is used to read values that are neither primitives, strings nor twyn types.
+     */
+    public <T> T readStreamed(JsonParser parser, Class<T> type) throws IOException {
+        return StreamReaders.get(type).read(parser);
+    }
+
+    @SuppressWarnings("unchecked")
     private <T> T read(Node node, Class<T> type) {
         try {
-            if (type.isArray()) {
-                Class<?> componentType = type.getComponentType();
-                Require.that(node.isCollection(), ErrorFactory.proxyArrayNodeNotCollectionType("ROOT", componentType.getSimpleName(), node));
-                return type.cast(twynContext.proxyArray((CollectionNode) node, validate(componentType)));
-            } else if (Map.class.isAssignableFrom(type)) {
-                Class<?> keyType = getMapParameterType(type, 0);
-                Class<?> valueType = getMapParameterType(type, 1);
-                return (T) twynContext.proxyMap(keyType, valueType, ContainerNode.class.cast(node));
-            } else {
-                return twynContext.proxy(node, validate(type));
-            }
+            return (T) RootType.of(type).read(twynContext, node);
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -92,30 +117,6 @@ public class Twyn {
         }
     }
 
-    private <T> Class<?> getMapParameterType(Class<T> type, int parameterIndex) {
-        return Arrays.stream(type.getGenericInterfaces())
-                .filter(t -> t.getTypeName().startsWith("java.util.Map"))
-                .map(t -> {
-                    Type actualTypeArgument = ((ParameterizedType) t).getActualTypeArguments()[parameterIndex];
-                    try {
-                        return this.getClass().getClassLoader().loadClass(actualTypeArgument.getTypeName());
-                    } catch (ClassNotFoundException e) {
-                        throw new TwynProxyException("Could not load expected return class=", e);
-                    }
-                }).findAny().get();
-    }
-
-    private <T> Class<T> validate(Class<T> type) {
-        ProxiedInterfaceClass proxiedInterface = ProxiedInterface.of(type);
-        proxiedInterface.getMethods().stream()
-                .filter(MethodType.ILLEGAL_TYPES_FILTER)
-                .findAny()
-                .ifPresent(m -> {
-                    throw ErrorFactory.proxyValidationError(proxiedInterface, m).get();
-                });
-        return type;
-    }
-
     public Node getNode(Object obj) {
         if (obj instanceof NodeSupplier) {
             return ((NodeSupplier) obj).getNode();
@@ -140,10 +141,13 @@ public class Twyn {
     }
 
     private static class ConfigurerImpl implements SelectMethod, ClassGenerationConfigurer {
-        private Supplier<Cache> cacheSupplier = () -> new Cache.None();
+        private IntFunction<Cache> cacheFactory = size -> new Cache.None();
         private TwynProxyBuilder twynProxyBuilder;
         private Set<Class<?>> precompiledTypes = Collections.<Class<?>>emptySet();
         boolean debug = false;
+        boolean projection = false;
+        boolean lazy = false;
+        boolean compact = false;
         private NodeProducer nodeProducer = new TwynJsonNodeProducer(new ObjectMapper());
 
         @Override
@@ -161,19 +165,34 @@ public class Twyn {
             return setAndReturn(c -> c.twynProxyBuilder = new TwynProxyClassBuilder());
         }
 
+        @Override
+        public ClassGenerationConfigurer withTieredGeneration(int promotionThreshold) {
+            return setAndReturn(c -> c.twynProxyBuilder = new TwynTieredProxyBuilder(promotionThreshold, new TwynProxyClassBuilder()));
+        }
+
         @Override
         public Configurer withFullCaching() {
-            return setAndReturn(c -> c.cacheSupplier = () -> new Cache.Full());
+            return setAndReturn(c -> c.cacheFactory = Cache.Full::new);
         }
 
         @Override
         public Configurer withFullConcurrentCaching() {
-            return setAndReturn(c -> c.cacheSupplier = () -> new Cache.FullConcurrent());
+            return setAndReturn(c -> c.cacheFactory = Cache.FullConcurrent::new);
+        }
+
+        @Override
+        public Configurer withBoundedCaching(int maxEntries) {
+            return setAndReturn(c -> c.cacheFactory = Cache.Bounded.factory(maxEntries, false));
+        }
+
+        @Override
+        public Configurer withBoundedSoftCaching(int maxEntries) {
+            return setAndReturn(c -> c.cacheFactory = Cache.Bounded.factory(maxEntries, true));
         }
 
         @Override
         public Configurer withNoCaching() {
-            return setAndReturn(c -> c.cacheSupplier = () -> new Cache.None());
+            return setAndReturn(c -> c.cacheFactory = size -> new Cache.None());
         }
 
         @Override
@@ -181,14 +200,39 @@ public class Twyn {
             return setAndReturn(c -> c.precompiledTypes = new HashSet<Class<?>>(types));
         }
 
+        @Override
+        public ClassGenerationConfigurer withClassCacheDirectory(Path directory) {
+            Objects.requireNonNull(directory);
+            return setAndReturn(c -> c.twynProxyBuilder = c.twynProxyBuilder.withClassCacheDirectory(directory));
+        }
+
         @Override
         public Configurer withDebugMode() {
             return setAndReturn(c -> c.debug = true);
         }
 
+        @Override
+        public Configurer withProjectionParsing() {
+            return setAndReturn(c -> c.projection = true);
+        }
+
+        @Override
+        public Configurer withLazyParsing() {
+            return setAndReturn(c -> c.lazy = true);
+        }
+
+        @Override
+        public Configurer withCompactNodes() {
+            return setAndReturn(c -> c.compact = true);
+        }
+
         @Override
         public Twyn configure() {
-            return new Twyn(new TwynContext(nodeProducer, twynProxyBuilder, cacheSupplier, debug)
+            ReachableInterfaces.of(precompiledTypes).forEach(RootType::validate);
+            NodeProducer configuredNodeProducer = projection ? nodeProducer.withProjection() : nodeProducer;
+            configuredNodeProducer = compact ? configuredNodeProducer.withCompactNodes() : configuredNodeProducer;
+            configuredNodeProducer = lazy ? configuredNodeProducer.withLazyNodes() : configuredNodeProducer;
+            return new Twyn(new TwynContext(configuredNodeProducer, twynProxyBuilder, cacheFactory, debug)
                     .precompile(precompiledTypes));
         }
 
@@ -208,6 +252,11 @@ public class Twyn {
          * Slower first time parsing. More performant afterwards. Mostly suitable for production code.
          */
         ClassGenerationConfigurer withClassGeneration();
+
+        /**
+         * Fast first time parsing. Performant afterwards, frequently used types are moved over to class generation
+         */
+        ClassGenerationConfigurer withTieredGeneration(int promotionThreshold);
     }
 
     public interface Configurer {
@@ -223,6 +272,16 @@ public class Twyn {
          */
         Configurer withFullConcurrentCaching();
 
+        /**
+         * Return values are cached up to maxEntries over all proxies, values not read recently are evicted. Thread safe
+         */
+        Configurer withBoundedCaching(int maxEntries);
+
+        /**
+         * As bounded caching, with softly referenced values. Thread safe
+         */
+        Configurer withBoundedSoftCaching(int maxEntries);
+
         /**
          * Default
          */
@@ -233,11 +292,31 @@ public class Twyn {
          */
         Configurer withDebugMode();
 
+        /**
+         * Only the parts of a document that the read type can reach are parsed
+         */
+        Configurer withProjectionParsing();
+
+        /**
+         * Documents are kept as bytes, values are decoded only when read. Takes precedence over projection and compact
+         */
+        Configurer withLazyParsing();
+
+        /**
+         * Documents are held as a compact tape instead of a node tree. Suits documents that are kept for long
+         */
+        Configurer withCompactNodes();
+
         Twyn configure();
     }
 
     public interface ClassGenerationConfigurer extends Configurer {
         Configurer withPrecompiledClasses(Collection<Class<?>> types);
+
+        /**
+         * Compiled classes are stored in, and reused from, the given directory
+         */
+        ClassGenerationConfigurer withClassCacheDirectory(Path directory);
     }
 
 }
@@ -23,5 +23,9 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.CLASS)
 @Target(ElementType.TYPE)
 public @interface TwynProxy {
-
+	/**
+	 * Also generate a reader that reads the type, and the interfaces declared in it, straight from json tokens into
+	 * immutable values, see Twyn.readStreamed
+	 */
+	boolean streaming() default false;
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal;
+
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+import se.jsa.twyn.internal.datamodel.CollectionNode;
+import se.jsa.twyn.internal.datamodel.Node;
+
+/**
+ * Base class of the proxy classes generated from source by class generation and annotation processing. It holds the
+ * state and helpers every proxy needs, so that generated classes only contain their methods and identity methods.
+ */
+public abstract class AbstractTwynProxy implements NodeSupplier {
+	protected final TwynContext twyn;
+	protected final Node node;
+	protected final Cache cache;
+	protected final boolean caching;
+
+	protected AbstractTwynProxy(TwynContext twyn, Node node, int cacheSize) {
+		this.node = node;
+		this.twyn = Objects.requireNonNull(twyn);
+		this.cache = Objects.requireNonNull(twyn.createCache(cacheSize));
+		this.caching = cache.isCaching();
+	}
+
+	@Override
+	public final Node getNode() {
+		return node;
+	}
+
+	/**
+	 * Reads a value through the node producer, with its checked exceptions wrapped
+	 */
+	protected final <T> T readValue(Node node, Class<T> valueType) {
+		try {
+			return twyn.readValue(node, valueType);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	protected final <T, A, R> R collect(Class<T> componentType, CollectionNode node, Collector<T, A, R> collector) {
+		return node.streamChildren()
+			.map(n -> componentType.isInterface() ? twyn.proxy(n, componentType) : readValue(n, componentType))
+			.collect(collector);
+	}
+
+	protected final <T, A, R> R collect(Function<Node, T> elementProxy, CollectionNode node, Collector<T, A, R> collector) {
+		return node.streamChildren()
+			.map(elementProxy)
+			.collect(collector);
+	}
+}
@@ -15,54 +15,193 @@
  */
 package se.jsa.twyn.internal;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
+/**
+ * Per-proxy cache of resolved values. Values are stored in slots, numbered from 0 up to the size the cache was
+ * created with, that are assigned to the properties of a proxied type when the type is first built.
+ */
 public interface Cache {
-	<T> T get(String key, Supplier<T> supplier);
-	void clear(String key);
+	<T> T get(int slot, Supplier<T> supplier);
+	void clear(int slot);
+
+	/**
+	 * @return false if values are never kept, letting callers compute them without a supplier
+	 */
+	default boolean isCaching() {
+		return true;
+	}
 
 	class Full implements Cache {
-		private final Map<Object, Object> cache = new HashMap<Object, Object>();
+		private static final Object NULL = new Object();
+		private final Object[] values;
+		public Full(int size) {
+			this.values = new Object[size];
+		}
 		@SuppressWarnings("unchecked")
 		@Override
-		public <T> T get(String key, Supplier<T> supplier) {
-			return (T)cache.computeIfAbsent(key, (k) -> supplier.get());
+		public <T> T get(int slot, Supplier<T> supplier) {
+			Object value = values[slot];
+			if (value == null) {
+				value = supplier.get();
+				values[slot] = value == null ? NULL : value;
+				return (T)value;
+			}
+			return value == NULL ? null : (T)value;
 		}
 		@Override
-		public void clear(String key) {
-			cache.remove(key);
+		public void clear(int slot) {
+			values[slot] = null;
 		}
 	}
 
+	/**
+	 * Thread safe cache where each value is computed at most once at a time: the first thread to miss a slot
+	 * claims it with a CAS and computes the value while other threads missing the same slot wait for the result.
+	 * Published values are read with a single acquiring load. A failed computation releases the slot so that
+	 * waiting threads retry.
+	 */
 	class FullConcurrent implements Cache {
-		private final Map<Object, Object> cache = new ConcurrentHashMap<Object, Object>();
+		private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+		private static final Object NULL = new Object();
+		private final Object[] values;
+		public FullConcurrent(int size) {
+			this.values = new Object[size];
+		}
 		@SuppressWarnings("unchecked")
 		@Override
-		public <T> T get(String key, Supplier<T> supplier) {
-			if (!cache.containsKey(key)) {
-				T value = supplier.get();
-				return (T)cache.computeIfAbsent(key, k -> value);
+		public <T> T get(int slot, Supplier<T> supplier) {
+			while (true) {
+				Object value = SLOTS.getAcquire(values, slot);
+				if (value == null) {
+					Pending pending = new Pending();
+					if (SLOTS.compareAndSet(values, slot, null, pending)) {
+						return pending.compute(values, slot, supplier);
+					}
+				} else if (value instanceof Pending) {
+					Pending pending = (Pending) value;
+					if (pending.owner == Thread.currentThread()) {
+						return supplier.get(); // re-entrant call from the computation itself
+					}
+					if (pending.await()) {
+						return pending.result == NULL ? null : (T)pending.result;
+					}
+				} else {
+					return value == NULL ? null : (T)value;
+				}
 			}
-			return (T)cache.get(key);
 		}
 		@Override
-		public void clear(String key) {
-			cache.remove(key);
+		public void clear(int slot) {
+			SLOTS.setRelease(values, slot, null);
+		}
+
+		private static final class Pending {
+			private final Thread owner = Thread.currentThread();
+			private final CountDownLatch done = new CountDownLatch(1);
+			private Object result;
+			private boolean failed = true;
+
+			<T> T compute(Object[] values, int slot, Supplier<T> supplier) {
+				try {
+					T computed = supplier.get();
+					result = computed == null ? NULL : computed;
+					failed = false;
+					SLOTS.compareAndSet(values, slot, this, result); // fails if cleared while computing
+					return computed;
+				} finally {
+					if (failed) {
+						SLOTS.compareAndSet(values, slot, this, null);
+					}
+					done.countDown();
+				}
+			}
+
+			/**
+			 * @return true if a result was computed, false if the computation failed
+			 */
+			boolean await() {
+				boolean interrupted = false;
+				while (true) {
+					try {
+						done.await();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+				return !failed;
+			}
+		}
+	}
+
+	/**
+	 * Thread safe cache whose values count against the entry budget of a {@link CacheClock} shared by all caches
+	 * created by the same factory. Evicted or reclaimed values are computed again when next read.
+	 */
+	class Bounded implements Cache {
+		private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(CacheClock.Entry[].class);
+		private static final Object NULL = new Object();
+		private final CacheClock clock;
+		private final CacheClock.Entry[] entries;
+		private Bounded(CacheClock clock, int size) {
+			this.clock = clock;
+			this.entries = new CacheClock.Entry[size];
+		}
+		public static IntFunction<Cache> factory(int maxEntries, boolean softValues) {
+			CacheClock clock = new CacheClock(maxEntries, softValues);
+			return size -> new Bounded(clock, size);
+		}
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> T get(int slot, Supplier<T> supplier) {
+			CacheClock.Entry entry = (CacheClock.Entry) SLOTS.getAcquire(entries, slot);
+			if (entry != null) {
+				Object value = entry.get();
+				if (value != null) {
+					return value == NULL ? null : (T)value;
+				}
+			}
+			T computed = supplier.get();
+			CacheClock.Entry created = clock.createEntry(this, slot, computed == null ? NULL : computed);
+			invalidate((CacheClock.Entry) SLOTS.getAndSetRelease(entries, slot, created));
+			clock.add(created);
+			return computed;
+		}
+		@Override
+		public void clear(int slot) {
+			invalidate((CacheClock.Entry) SLOTS.getAndSetRelease(entries, slot, null));
+		}
+		void evict(int slot, CacheClock.Entry entry) {
+			SLOTS.compareAndSet(entries, slot, entry, null);
+		}
+		private static void invalidate(CacheClock.Entry entry) {
+			if (entry != null) {
+				entry.invalidated = true;
+			}
 		}
 	}
 
 	class None implements Cache {
 		@Override
-		public <T> T get(String key, Supplier<T> supplier) {
+		public <T> T get(int slot, Supplier<T> supplier) {
 			return supplier.get();
 		}
 		@Override
-		public void clear(String key) {
+		public void clear(int slot) {
 			// do nothing
 		}
+		@Override
+		public boolean isCaching() {
+			return false;
+		}
 	}
 
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * The entry budget shared by all {@link Cache.Bounded} caches of one Twyn instance. Cached values are kept in a
+ * ring of fixed size; when it is full the clock hand sweeps the ring and evicts the first value that has not been
+ * read since the hand last passed it.
+ * <p>
+ * The ring only references entries weakly, each entry is kept by the cache holding it. The values of proxies that
+ * are no longer used are therefore collected with their proxies, and their places in the ring reused.
+ */
+class CacheClock {
+	private final WeakReference<?>[] ring;
+	private final boolean softValues;
+	private int hand;
+
+	CacheClock(int maxEntries, boolean softValues) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive, was " + maxEntries);
+		}
+		this.ring = new WeakReference<?>[maxEntries];
+		this.softValues = softValues;
+	}
+
+	Entry createEntry(Cache.Bounded owner, int slot, Object value) {
+		return softValues ? new SoftEntry(owner, slot, value) : new Entry(owner, slot, value);
+	}
+
+	synchronized void add(Entry entry) {
+		while (true) {
+			Entry current = ring[hand] == null ? null : (Entry) ring[hand].get();
+			if (current == null || current.invalidated) {
+				break;
+			}
+			if (current.referenced) {
+				current.referenced = false;
+				hand = (hand + 1) % ring.length;
+			} else {
+				current.owner.evict(current.slot, current);
+				break;
+			}
+		}
+		ring[hand] = new WeakReference<>(entry);
+		hand = (hand + 1) % ring.length;
+	}
+
+	static class Entry {
+		private final Cache.Bounded owner;
+		private final int slot;
+		private final Object value;
+		boolean referenced;
+		volatile boolean invalidated;
+
+		private Entry(Cache.Bounded owner, int slot, Object value) {
+			this.owner = owner;
+			this.slot = slot;
+			this.value = value;
+		}
+
+		/**
+		 * @return the cached value, or null if it has been reclaimed
+		 */
+		Object get() {
+			referenced = true;
+			return value;
+		}
+	}
+
+	private static class SoftEntry extends Entry {
+		private final SoftReference<Object> reference;
+
+		private SoftEntry(Cache.Bounded owner, int slot, Object value) {
+			super(owner, slot, null);
+			this.reference = new SoftReference<>(value);
+		}
+
+		@Override
+		Object get() {
+			referenced = true;
+			return reference.get();
+		}
+	}
+}
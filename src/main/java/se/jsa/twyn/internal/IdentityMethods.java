@@ -15,6 +15,7 @@
  */
 package se.jsa.twyn.internal;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -23,24 +24,26 @@ import java.util.stream.Stream;
 
 import se.jsa.twyn.IdField;
 import se.jsa.twyn.internal.readmodel.ImplementedMethod;
+import se.jsa.twyn.internal.proxy.common.ProxiedType;
 import se.jsa.twyn.internal.readmodel.ProxiedInterface;
+import se.jsa.twyn.internal.readmodel.reflect.ProxiedInterfaceClass;
 
 public class IdentityMethods {
 	private final Map<ProxiedInterface, List<ImplementedMethod>> methods = new ConcurrentHashMap<ProxiedInterface, List<ImplementedMethod>>();
 
 	public Stream<ImplementedMethod> getIdentityMethods(ProxiedInterface implementedType) {
-		if (!methods.containsKey(implementedType)) {
-			List<ImplementedMethod> implementedMethods = IdentityMethods.get(implementedType);
-			return methods.computeIfAbsent(implementedType, t -> implementedMethods).stream();
+		if (implementedType instanceof ProxiedInterfaceClass) {
+			return ProxiedType.of(((ProxiedInterfaceClass) implementedType).getProxiedType()).getIdentityMethods().stream();
 		}
-		return methods.get(implementedType).stream();
+		List<ImplementedMethod> implementedMethods = methods.get(implementedType);
+		return (implementedMethods != null ? implementedMethods : methods.computeIfAbsent(implementedType, IdentityMethods::resolve)).stream();
 	}
 
-	private static List<ImplementedMethod> get(ProxiedInterface implementedType) {
+	public static List<ImplementedMethod> resolve(ProxiedInterface implementedType) {
 		List<ImplementedMethod> methods = implementedType.getMethods().stream()
 				.filter(m -> !MethodType.DEFAULT.test(m) && m.getNumParameters() == 0)
 				.collect(Collectors.toList());
 		List<ImplementedMethod> idAnnotatedMethods = methods.stream().filter(m ->  m.hasAnnotation(IdField.class)).collect(Collectors.toList());
-		return (idAnnotatedMethods.size() > 0) ? idAnnotatedMethods : methods;
+		return Collections.unmodifiableList((idAnnotatedMethods.size() > 0) ? idAnnotatedMethods : methods);
 	}
 }
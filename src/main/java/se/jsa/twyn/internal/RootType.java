@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Map;
+
+import se.jsa.twyn.TwynProxyException;
+import se.jsa.twyn.internal.datamodel.CollectionNode;
+import se.jsa.twyn.internal.datamodel.ContainerNode;
+import se.jsa.twyn.internal.datamodel.Node;
+import se.jsa.twyn.internal.readmodel.ProxiedInterface;
+import se.jsa.twyn.internal.readmodel.reflect.ProxiedInterfaceClass;
+
+/**
+ * How a type passed to Twyn.read is turned into a result: as a proxy, an array of proxies or a map of proxies.
+ * Plans are validated and resolved once per type; types failing validation are checked again on every read.
+ */
+public abstract class RootType {
+	private static final ClassValue<RootType> ROOT_TYPES = new ClassValue<RootType>() {
+		@Override
+		protected RootType computeValue(Class<?> type) {
+			if (type.isArray()) {
+				return new ArrayRoot(type.getComponentType());
+			} else if (Map.class.isAssignableFrom(type)) {
+				return new MapRoot(getMapParameterType(type, 0), getMapParameterType(type, 1));
+			} else {
+				return new InterfaceRoot(type);
+			}
+		}
+	};
+
+	private RootType() {
+	}
+
+	public static RootType of(Class<?> type) {
+		return ROOT_TYPES.get(type);
+	}
+
+	public abstract Object read(TwynContext twynContext, Node node);
+
+	public static <T> Class<T> validate(Class<T> type) {
+		ProxiedInterfaceClass proxiedInterface = ProxiedInterface.of(type);
+		proxiedInterface.getMethods().stream()
+				.filter(MethodType.ILLEGAL_TYPES_FILTER)
+				.findAny()
+				.ifPresent(m -> {
+					throw ErrorFactory.proxyValidationError(proxiedInterface, m).get();
+				});
+		return type;
+	}
+
+	private static Class<?> getMapParameterType(Class<?> type, int parameterIndex) {
+		return Arrays.stream(type.getGenericInterfaces())
+				.filter(t -> t.getTypeName().startsWith("java.util.Map"))
+				.map(t -> {
+					Type actualTypeArgument = ((ParameterizedType) t).getActualTypeArguments()[parameterIndex];
+					if (actualTypeArgument instanceof Class) {
+						return (Class<?>) actualTypeArgument;
+					}
+					try {
+						return type.getClassLoader().loadClass(actualTypeArgument.getTypeName());
+					} catch (ClassNotFoundException e) {
+						throw new TwynProxyException("Could not load expected return class=", e);
+					}
+				}).findAny().get();
+	}
+
+	private static class InterfaceRoot extends RootType {
+		private final Class<?> type;
+
+		InterfaceRoot(Class<?> type) {
+			this.type = validate(type);
+		}
+
+		@Override
+		public Object read(TwynContext twynContext, Node node) {
+			return twynContext.proxy(node, type);
+		}
+	}
+
+	private static class ArrayRoot extends RootType {
+		private final Class<?> componentType;
+
+		ArrayRoot(Class<?> componentType) {
+			this.componentType = componentType.isInterface() ? validate(componentType) : componentType;
+		}
+
+		@Override
+		public Object read(TwynContext twynContext, Node node) {
+			Require.that(node.isCollection(), ErrorFactory.proxyArrayNodeNotCollectionType("ROOT", componentType.getSimpleName(), node));
+			return twynContext.proxyArray((CollectionNode) node, componentType);
+		}
+	}
+
+	private static class MapRoot extends RootType {
+		private final Class<?> keyType;
+		private final Class<?> valueType;
+
+		MapRoot(Class<?> keyType, Class<?> valueType) {
+			this.keyType = keyType;
+			this.valueType = valueType;
+		}
+
+		@Override
+		public Object read(TwynContext twynContext, Node node) {
+			return twynContext.proxyMap(keyType, valueType, ContainerNode.class.cast(node));
+		}
+	}
+}
@@ -21,7 +21,6 @@ import se.jsa.twyn.internal.datamodel.ContainerNode;
 import se.jsa.twyn.internal.datamodel.Node;
 import se.jsa.twyn.internal.datamodel.NodeProducer;
 import se.jsa.twyn.internal.proxy.TwynProxyBuilder;
-import se.jsa.twyn.internal.proxy.cg.TwynProxyClassBuilder;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
@@ -30,7 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.function.Supplier;
+import java.util.function.IntFunction;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
@@ -38,14 +37,14 @@ public class TwynContext {
 
     private final NodeProducer nodeProducer;
     private final TwynProxyBuilder proxyBuilder;
-    private final Supplier<Cache> cacheSupplier;
+    private final IntFunction<Cache> cacheFactory;
     private final boolean debug;
     private final IdentityMethods identityMethods = new IdentityMethods();
 
-    public TwynContext(NodeProducer nodeProducer, TwynProxyBuilder proxyBuilder, Supplier<Cache> cacheSupplier, boolean debug) {
+    public TwynContext(NodeProducer nodeProducer, TwynProxyBuilder proxyBuilder, IntFunction<Cache> cacheFactory, boolean debug) {
         this.nodeProducer = nodeProducer;
         this.proxyBuilder = Objects.requireNonNull(proxyBuilder);
-        this.cacheSupplier = Objects.requireNonNull(cacheSupplier);
+        this.cacheFactory = Objects.requireNonNull(cacheFactory);
         this.debug = debug;
     }
 
@@ -99,12 +98,35 @@ public class TwynContext {
         return nodeProducer.readNode(resolvedTargetNode, valueType);
     }
 
+    /**
+     * As readValue, for the scalar types that generated classes read without catching exceptions
+     */
+    public <T> T readScalar(Node resolvedTargetNode, Class<T> valueType) {
+        return nodeProducer.readNode(resolvedTargetNode, valueType);
+    }
+
+    public int readInt(Node resolvedTargetNode) {
+        return nodeProducer.readInt(resolvedTargetNode);
+    }
+
+    public long readLong(Node resolvedTargetNode) {
+        return nodeProducer.readLong(resolvedTargetNode);
+    }
+
+    public double readDouble(Node resolvedTargetNode) {
+        return nodeProducer.readDouble(resolvedTargetNode);
+    }
+
+    public boolean readBoolean(Node resolvedTargetNode) {
+        return nodeProducer.readBoolean(resolvedTargetNode);
+    }
+
     public Node writeValue(Object object) {
         return nodeProducer.mapToNode(object);
     }
 
-    public Cache createCache() {
-        return cacheSupplier.get();
+    public Cache createCache(int size) {
+        return cacheFactory.apply(size);
     }
 
     public IdentityMethods getIdentityMethods() {
@@ -121,9 +143,7 @@ public class TwynContext {
     }
 
     public TwynContext precompile(Set<Class<?>> precompiledTypes) {
-        if (proxyBuilder instanceof TwynProxyClassBuilder) {
-            ((TwynProxyClassBuilder) proxyBuilder).precompile(precompiledTypes, this);
-        }
+        proxyBuilder.precompile(precompiledTypes, this);
         return this;
     }
 
@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 /**
  * Created by joakim on 2017-02-12.
@@ -15,10 +17,93 @@ public interface NodeProducer {
 
     <T> T readNode(Node resolvedTargetNode, Class<T> valueType);
 
+    /*
+     * Primitive reads, for producers that can read them without mapping and boxing
+     */
+    default int readInt(Node resolvedTargetNode) {
+        return readNode(resolvedTargetNode, int.class);
+    }
+
+    default long readLong(Node resolvedTargetNode) {
+        return readNode(resolvedTargetNode, long.class);
+    }
+
+    default double readDouble(Node resolvedTargetNode) {
+        return readNode(resolvedTargetNode, double.class);
+    }
+
+    default boolean readBoolean(Node resolvedTargetNode) {
+        return readNode(resolvedTargetNode, boolean.class);
+    }
+
+    /**
+     * @return a producer that only materializes the parts of read documents that proxies of the read type can reach,
+     * or this producer if it always reads documents whole
+     */
+    default NodeProducer withProjection() {
+        return this;
+    }
+
+    /**
+     * @return a producer that decodes the nodes and values of read documents only as they are read, or this producer
+     * if it always decodes documents whole
+     */
+    default NodeProducer withLazyNodes() {
+        return this;
+    }
+
+    /**
+     * @return a producer that holds read documents in a compact, read-only layout until they are modified, or this
+     * producer if it has no such layout
+     */
+    default NodeProducer withCompactNodes() {
+        return this;
+    }
+
     Node read(InputStream inputStream, Class<?> type);
     Node read(byte[] data, Class<?> type);
     Node read(File file, Class<?> type);
     Node read(Reader reader, Class<?> type);
     Node read(String string, Class<?> type);
     Node read(URL url, Class<?> type);
+
+    /**
+     * Reads the bytes from position to limit of the buffer, leaving the buffer unchanged
+     */
+    default Node read(ByteBuffer buffer, Class<?> type) {
+        return read(new ByteBuffer[] { buffer }, type);
+    }
+
+    /**
+     * Reads the bytes from position to limit of each buffer in turn, as one document, leaving the buffers unchanged.
+     * Producers that can read buffers without first copying them into an array do so here
+     */
+    default Node read(ByteBuffer[] buffers, Class<?> type) {
+        return read(toArray(buffers), type);
+    }
+
+    /**
+     * @return the bytes from position to limit of each buffer in turn, leaving the buffers unchanged
+     */
+    static byte[] toArray(ByteBuffer[] buffers) {
+        int length = 0;
+        for (ByteBuffer buffer : buffers) {
+            length = Math.addExact(length, buffer.remaining());
+        }
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (ByteBuffer buffer : buffers) {
+            int remaining = buffer.remaining();
+            buffer.duplicate().get(data, offset, remaining);
+            offset += remaining;
+        }
+        return data;
+    }
+
+    /**
+     * Producers that can read files in place, without first reading them into the heap, do so here
+     */
+    default Node read(Path path, Class<?> type) {
+        return read(path.toFile(), type);
+    }
 }
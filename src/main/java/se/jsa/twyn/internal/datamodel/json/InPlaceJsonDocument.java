@@ -0,0 +1,33 @@
+package se.jsa.twyn.internal.datamodel.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A json document that is read in place from another representation than a tree of json nodes. The first
+ * modification of any of its nodes parses the document into a tree, which all its nodes delegate to from then on.
+ */
+abstract class InPlaceJsonDocument {
+    private volatile JsonNode tree;
+
+    boolean isModified() {
+        return tree != null;
+    }
+
+    /**
+     * @return the document parsed into a tree, parsed on the first call
+     */
+    JsonNode tree() {
+        JsonNode result = tree;
+        if (result == null) {
+            synchronized (this) {
+                result = tree;
+                if (result == null) {
+                    tree = result = parse();
+                }
+            }
+        }
+        return result;
+    }
+
+    protected abstract JsonNode parse();
+}
@@ -0,0 +1,148 @@
+package se.jsa.twyn.internal.datamodel.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import se.jsa.twyn.internal.datamodel.CollectionNode;
+import se.jsa.twyn.internal.datamodel.ContainerNode;
+import se.jsa.twyn.internal.datamodel.Node;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A node of an {@link InPlaceJsonDocument}. Nodes read the document in place until it is modified, after which they
+ * delegate to their counterparts in its parsed tree, found by the path from the root.
+ */
+abstract class InPlaceJsonNode implements Node, CollectionNode, ContainerNode {
+
+    private final InPlaceJsonNode parent;
+    private final String fieldName;
+    private final int index;
+
+    /**
+     * @param fieldName the name of this node in its parent object, or null
+     * @param index the index of this node in its parent array, or -1
+     */
+    protected InPlaceJsonNode(InPlaceJsonNode parent, String fieldName, int index) {
+        this.parent = parent;
+        this.fieldName = fieldName;
+        this.index = index;
+    }
+
+    protected abstract InPlaceJsonDocument document();
+
+    /**
+     * @return this node decoded from the document as it was read
+     */
+    protected abstract JsonNode decode();
+
+    protected abstract boolean isObject();
+    protected abstract boolean isArray();
+
+    /**
+     * @return the named field of this object node, or null if there is none
+     */
+    protected abstract Node field(String name);
+
+    /**
+     * @return the element at index of this array node, or null if there is none
+     */
+    protected abstract Node element(int index);
+
+    protected abstract Stream<Node> elements();
+    protected abstract Stream<Map.Entry<String, Node>> fields();
+
+    JsonNode toJsonNode() {
+        return document().isModified() ? resolve() : decode();
+    }
+
+    /**
+     * @return the counterpart of this node in the parsed tree of the document, or null if it is no longer there
+     */
+    private JsonNode resolve() {
+        if (parent == null) {
+            return document().tree();
+        }
+        JsonNode parentNode = parent.resolve();
+        if (parentNode == null) {
+            return null;
+        }
+        return fieldName != null ? parentNode.get(fieldName) : parentNode.get(index);
+    }
+
+    private TwynJsonNode resolved() {
+        return TwynJsonNode.create(resolve());
+    }
+
+    @Override
+    public Node get(String name) {
+        if (document().isModified()) {
+            JsonNode node = resolve();
+            return node == null ? null : TwynJsonNode.create(node.get(name));
+        }
+        return isObject() ? field(name) : null;
+    }
+
+    @Override
+    public Node get(int index) {
+        if (document().isModified()) {
+            JsonNode node = resolve();
+            return node == null ? null : TwynJsonNode.create(node.get(index));
+        }
+        return isArray() && index >= 0 ? element(index) : null;
+    }
+
+    @Override
+    public void set(String name, Node node) {
+        document().tree();
+        resolved().set(name, node);
+    }
+
+    @Override
+    public void set(String name, Object value) {
+        document().tree();
+        resolved().set(name, value);
+    }
+
+    @Override
+    public void set(int index, Node node) {
+        document().tree();
+        resolved().set(index, node);
+    }
+
+    @Override
+    public void set(int index, Object value) {
+        document().tree();
+        resolved().set(index, value);
+    }
+
+    @Override
+    public boolean isCollection() {
+        return document().isModified() ? resolve().isArray() : isArray();
+    }
+
+    @Override
+    public boolean isContainerNode() {
+        return document().isModified() ? resolve().isContainerNode() : isArray() || isObject();
+    }
+
+    @Override
+    public Stream<Node> streamChildren() {
+        if (document().isModified()) {
+            return resolved().streamChildren();
+        }
+        return isArray() ? elements() : Stream.empty();
+    }
+
+    @Override
+    public Stream<Map.Entry<String, Node>> streamFields() {
+        if (document().isModified()) {
+            return resolved().streamFields();
+        }
+        return isObject() ? fields() : Stream.empty();
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(toJsonNode());
+    }
+}
@@ -0,0 +1,155 @@
+package se.jsa.twyn.internal.datamodel.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The bytes of a json document, held in an array or in memory mapped from a file. Positions are longs so that
+ * mapped files may be larger than an array can be.
+ */
+abstract class JsonBytes {
+
+    private JsonBytes() {
+    }
+
+    static JsonBytes of(byte[] data) {
+        return new Array(data);
+    }
+
+    /**
+     * Maps the file read-only. The mapping stays valid after the file is closed, until it is garbage collected
+     */
+    static JsonBytes map(Path path) throws IOException {
+        return map(path, 1L << 30);
+    }
+
+    /**
+     * @param segmentSize the size of each mapped region, all but the last, at most Integer.MAX_VALUE
+     */
+    static JsonBytes map(Path path, long segmentSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+            }
+            return new Mapped(segments, segmentSize, length);
+        }
+    }
+
+    abstract long length();
+
+    abstract byte at(long pos);
+
+    abstract String decodeUtf8(long start, long end);
+
+    /**
+     * @return a parser of the bytes from start to end
+     */
+    abstract JsonParser createParser(JsonFactory jsonFactory, long start, long end) throws IOException;
+
+    private static final class Array extends JsonBytes {
+        private final byte[] data;
+
+        private Array(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        long length() {
+            return data.length;
+        }
+
+        @Override
+        byte at(long pos) {
+            return data[(int) pos];
+        }
+
+        @Override
+        String decodeUtf8(long start, long end) {
+            return new String(data, (int) start, (int) (end - start), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        JsonParser createParser(JsonFactory jsonFactory, long start, long end) throws IOException {
+            return jsonFactory.createParser(data, (int) start, (int) (end - start));
+        }
+    }
+
+    private static final class Mapped extends JsonBytes {
+        private final MappedByteBuffer[] segments;
+        private final long segmentSize;
+        private final long length;
+
+        private Mapped(MappedByteBuffer[] segments, long segmentSize, long length) {
+            this.segments = segments;
+            this.segmentSize = segmentSize;
+            this.length = length;
+        }
+
+        @Override
+        long length() {
+            return length;
+        }
+
+        @Override
+        byte at(long pos) {
+            return segments[(int) (pos / segmentSize)].get((int) (pos % segmentSize));
+        }
+
+        @Override
+        String decodeUtf8(long start, long end) {
+            byte[] bytes = new byte[(int) (end - start)];
+            copy(start, bytes, 0, bytes.length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Copies through duplicates of the segments, as the segments themselves are shared between threads
+         */
+        private void copy(long start, byte[] target, int offset, int length) {
+            while (length > 0) {
+                ByteBuffer segment = segments[(int) (start / segmentSize)].duplicate();
+                segment.position((int) (start % segmentSize));
+                int count = Math.min(length, segment.remaining());
+                segment.get(target, offset, count);
+                start += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        JsonParser createParser(JsonFactory jsonFactory, long start, long end) throws IOException {
+            return jsonFactory.createParser(new InputStream() {
+                private long pos = start;
+
+                @Override
+                public int read() {
+                    return pos < end ? at(pos++) & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] target, int offset, int length) {
+                    if (pos >= end) {
+                        return -1;
+                    }
+                    int count = (int) Math.min(length, end - pos);
+                    copy(pos, target, offset, count);
+                    pos += count;
+                    return count;
+                }
+            });
+        }
+    }
+}
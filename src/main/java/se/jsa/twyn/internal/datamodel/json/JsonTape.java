@@ -0,0 +1,277 @@
+package se.jsa.twyn.internal.datamodel.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import se.jsa.twyn.internal.proxy.common.Projection;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A json document as a flat tape of longs, in the manner of simdjson. Every value is an entry holding its type in the
+ * top byte and a payload in the rest, longs and doubles take one more entry for their bits. An object or array entry
+ * holds the position after its last member or element, so that it is skipped in one step; the members of an object
+ * are a string entry for the key followed by the value. Strings, keys and numbers too big for a long are kept as UTF-8
+ * in a side buffer, prefixed by their length, and their entries hold their offset into it.
+ */
+class JsonTape extends InPlaceJsonDocument {
+    static final byte OBJECT = '{';
+    static final byte ARRAY = '[';
+    static final byte STRING = '"';
+    static final byte INT = 'i';
+    static final byte LONG = 'l';
+    static final byte DOUBLE = 'd';
+    static final byte BIG_INTEGER = 'I';
+    static final byte BIG_DECIMAL = 'D';
+    static final byte TRUE = 't';
+    static final byte FALSE = 'f';
+    static final byte NULL = 'n';
+    private static final long PAYLOAD_MASK = (1L << 56) - 1;
+
+    private final ObjectMapper objectMapper;
+    private final JsonNodeFactory nodeFactory;
+    private long[] tape = new long[64];
+    private int size;
+    private byte[] strings = new byte[256];
+    private int stringsSize;
+
+    private JsonTape(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.nodeFactory = objectMapper.getNodeFactory();
+    }
+
+    /**
+     * @return the tape of the first value of the parser, with only what the projection reaches, or null if the parser
+     * has no content
+     */
+    static JsonTape read(JsonParser parser, Projection projection, ObjectMapper objectMapper) throws IOException {
+        objectMapper.getDeserializationConfig().initialize(parser);
+        if (parser.nextToken() == null) {
+            return null;
+        }
+        JsonTape result = new JsonTape(objectMapper);
+        result.append(parser, projection);
+        result.tape = Arrays.copyOf(result.tape, result.size);
+        result.strings = Arrays.copyOf(result.strings, result.stringsSize);
+        return result;
+    }
+
+    private void append(JsonParser parser, Projection projection) throws IOException {
+        JsonToken token = parser.currentToken();
+        switch (token) {
+            case START_OBJECT:
+                int object = add(OBJECT, 0);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    Projection fieldProjection = projection.field(fieldName);
+                    parser.nextToken();
+                    if (fieldProjection == null) {
+                        parser.skipChildren();
+                    } else {
+                        add(STRING, addString(fieldName));
+                        append(parser, fieldProjection);
+                    }
+                }
+                tape[object] = entry(OBJECT, size);
+                break;
+            case START_ARRAY:
+                int array = add(ARRAY, 0);
+                int index = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    Projection elementProjection = projection.element(index++);
+                    if (elementProjection == null) {
+                        parser.skipChildren();
+                        add(NULL, 0);
+                    } else {
+                        append(parser, elementProjection);
+                    }
+                }
+                tape[array] = entry(ARRAY, size);
+                break;
+            case VALUE_STRING:
+                add(STRING, addString(parser.getText()));
+                break;
+            case VALUE_NUMBER_INT:
+                appendInteger(parser);
+                break;
+            case VALUE_NUMBER_FLOAT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL
+                        || (objectMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS) && !parser.isNaN())) {
+                    add(BIG_DECIMAL, addString(parser.getDecimalValue().toString()));
+                } else {
+                    add(DOUBLE, 0);
+                    add(Double.doubleToRawLongBits(parser.getDoubleValue()));
+                }
+                break;
+            case VALUE_TRUE:
+                add(TRUE, 0);
+                break;
+            case VALUE_FALSE:
+                add(FALSE, 0);
+                break;
+            case VALUE_NULL:
+                add(NULL, 0);
+                break;
+            default:
+                throw new IOException("Unexpected token " + token + " at " + parser.getTokenLocation());
+        }
+    }
+
+    /**
+     * Integers are kept as the node types the ObjectMapper would map them to
+     */
+    private void appendInteger(JsonParser parser) throws IOException {
+        JsonParser.NumberType numberType = parser.getNumberType();
+        if (objectMapper.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)) {
+            numberType = JsonParser.NumberType.BIG_INTEGER;
+        } else if (objectMapper.isEnabled(DeserializationFeature.USE_LONG_FOR_INTS) && numberType == JsonParser.NumberType.INT) {
+            numberType = JsonParser.NumberType.LONG;
+        }
+        switch (numberType) {
+            case INT:
+                add(INT, parser.getIntValue() & 0xFFFFFFFFL);
+                break;
+            case LONG:
+                add(LONG, 0);
+                add(parser.getLongValue());
+                break;
+            default:
+                add(BIG_INTEGER, addString(parser.getBigIntegerValue().toString()));
+                break;
+        }
+    }
+
+    private static long entry(byte type, long payload) {
+        return ((long) type << 56) | payload;
+    }
+
+    private int add(byte type, long payload) {
+        return add(entry(type, payload));
+    }
+
+    private int add(long entry) {
+        if (size == tape.length) {
+            tape = Arrays.copyOf(tape, size * 2);
+        }
+        tape[size] = entry;
+        return size++;
+    }
+
+    private int addString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        while (stringsSize + 4 + bytes.length > strings.length) {
+            strings = Arrays.copyOf(strings, strings.length * 2);
+        }
+        int offset = stringsSize;
+        strings[offset] = (byte) (bytes.length >>> 24);
+        strings[offset + 1] = (byte) (bytes.length >>> 16);
+        strings[offset + 2] = (byte) (bytes.length >>> 8);
+        strings[offset + 3] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, strings, offset + 4, bytes.length);
+        stringsSize += 4 + bytes.length;
+        return offset;
+    }
+
+    byte type(int pos) {
+        return (byte) (tape[pos] >>> 56);
+    }
+
+    private long payload(int pos) {
+        return tape[pos] & PAYLOAD_MASK;
+    }
+
+    /**
+     * @return the position after the value at pos
+     */
+    int next(int pos) {
+        switch (type(pos)) {
+            case OBJECT:
+            case ARRAY:
+                return (int) payload(pos);
+            case LONG:
+            case DOUBLE:
+                return pos + 2;
+            default:
+                return pos + 1;
+        }
+    }
+
+    private int stringLength(int offset) {
+        return ((strings[offset] & 0xFF) << 24) | ((strings[offset + 1] & 0xFF) << 16) | ((strings[offset + 2] & 0xFF) << 8) | (strings[offset + 3] & 0xFF);
+    }
+
+    String string(int pos) {
+        int offset = (int) payload(pos);
+        return new String(strings, offset + 4, stringLength(offset), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return if the string at pos is value, compared without decoding it as long as both are ASCII
+     */
+    boolean stringEquals(int pos, String value) {
+        int offset = (int) payload(pos);
+        int length = stringLength(offset);
+        if (length != value.length()) { // multi-byte characters only ever make the encoded string longer
+            return length > value.length() && string(pos).equals(value);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            byte b = strings[offset + 4 + i];
+            if (c >= 0x80 || b < 0) {
+                return string(pos).equals(value);
+            } else if (c != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected JsonNode parse() {
+        return decode(0);
+    }
+
+    JsonNode decode(int pos) {
+        switch (type(pos)) {
+            case OBJECT:
+                ObjectNode object = nodeFactory.objectNode();
+                for (int member = pos + 1; member < next(pos); member = next(member + 1)) {
+                    object.set(string(member), decode(member + 1));
+                }
+                return object;
+            case ARRAY:
+                ArrayNode array = nodeFactory.arrayNode();
+                for (int element = pos + 1; element < next(pos); element = next(element)) {
+                    array.add(decode(element));
+                }
+                return array;
+            case STRING:
+                return nodeFactory.textNode(string(pos));
+            case INT:
+                return nodeFactory.numberNode((int) payload(pos));
+            case LONG:
+                return nodeFactory.numberNode(tape[pos + 1]);
+            case DOUBLE:
+                return nodeFactory.numberNode(Double.longBitsToDouble(tape[pos + 1]));
+            case BIG_INTEGER:
+                return nodeFactory.numberNode(new BigInteger(string(pos)));
+            case BIG_DECIMAL:
+                return nodeFactory.numberNode(new BigDecimal(string(pos)));
+            case TRUE:
+                return nodeFactory.booleanNode(true);
+            case FALSE:
+                return nodeFactory.booleanNode(false);
+            default:
+                return nodeFactory.nullNode();
+        }
+    }
+}
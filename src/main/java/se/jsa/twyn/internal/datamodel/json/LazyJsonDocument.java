@@ -0,0 +1,299 @@
+package se.jsa.twyn.internal.datamodel.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import se.jsa.twyn.ReadException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The UTF-8 {@link JsonBytes} of a json document and a sparse structural index of where its large objects and arrays
+ * end, shared by all {@link LazyJsonNode}s of the document. The index is built by one validating scan when the
+ * document is read, values and subtrees are decoded from the bytes only when they are read. Documents must be
+ * encoded in UTF-8.
+ * <p>
+ * The scan is not deferred to the first node access: it is what makes malformed documents fail with a
+ * {@link ReadException} in Twyn.read, as they do when parsed, instead of in whichever getter touches them first.
+ * <p>
+ * Only containers spanning at least {@link #INDEXED_SPAN} bytes are indexed, so the index holds at most
+ * depth * length / INDEXED_SPAN entries however many objects and arrays the document has. The end of a smaller
+ * container is found by scanning its bytes when its parent is first expanded, which reads each byte of the parent
+ * once more at most.
+ */
+class LazyJsonDocument extends InPlaceJsonDocument {
+    static final long INDEXED_SPAN = 1 << 16;
+
+    private final JsonBytes data;
+    private final ObjectMapper objectMapper;
+    private final JsonNodeFactory nodeFactory;
+    private final Map<Long, Long> largeContainerEnds = new HashMap<>();
+
+    LazyJsonDocument(JsonBytes data, ObjectMapper objectMapper) {
+        this.data = data;
+        this.objectMapper = objectMapper;
+        this.nodeFactory = objectMapper.getNodeFactory();
+        index();
+    }
+
+    /**
+     * Records the end of every large object and array of the first value of the document. The parser only
+     * tokenizes, it validates the document without decoding any values
+     */
+    private void index() {
+        try (JsonParser parser = data.createParser(objectMapper.getFactory(), 0, data.length())) {
+            long[] open = new long[16];
+            int depth = 0;
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = parser.getTokenLocation().getByteOffset();
+                } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                    long start = open[--depth];
+                    long end = parser.getTokenLocation().getByteOffset() + 1;
+                    if (end - start >= INDEXED_SPAN) {
+                        largeContainerEnds.put(start, end);
+                    }
+                }
+                if (depth == 0) {
+                    break; // anything after the first value is ignored, as when parsed
+                }
+            }
+        } catch (IOException e) {
+            throw new ReadException("Could not read data!", e);
+        }
+    }
+
+    byte at(long pos) {
+        return data.at(pos);
+    }
+
+    @Override
+    protected JsonNode parse() {
+        return decode(0, data.length());
+    }
+
+    /**
+     * @return the position of the first value of the document, or -1 if it is empty
+     */
+    long firstValue() {
+        long pos = skipWhitespace(0);
+        return pos < data.length() ? pos : -1;
+    }
+
+    long skipWhitespace(long pos) {
+        while (pos < data.length() && isWhitespace(data.at(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @return the position after the value starting at pos
+     */
+    long valueEnd(long pos) {
+        switch (data.at(pos)) {
+            case '{':
+            case '[':
+                Long end = largeContainerEnds.get(pos);
+                return end != null ? end : containerEnd(pos);
+            case '"':
+                return stringEnd(pos);
+            default:
+                long literalEnd = pos;
+                while (literalEnd < data.length() && !isWhitespace(data.at(literalEnd)) && data.at(literalEnd) != ',' && data.at(literalEnd) != '}' && data.at(literalEnd) != ']') {
+                    literalEnd++;
+                }
+                if (literalEnd == pos) {
+                    throw malformed(pos);
+                }
+                return literalEnd;
+        }
+    }
+
+    /**
+     * @return the position after the object or array starting at start, which is smaller than the indexed span
+     */
+    private long containerEnd(long start) {
+        int depth = 0;
+        for (long pos = start; pos < data.length(); pos++) {
+            byte b = data.at(pos);
+            if (b == '"') {
+                pos = stringEnd(pos) - 1;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return pos + 1;
+            }
+        }
+        throw malformed(start);
+    }
+
+    /**
+     * @return the position after the closing quote of the string starting at quotePos
+     */
+    long stringEnd(long quotePos) {
+        for (long pos = quotePos + 1; pos < data.length(); pos++) {
+            if (data.at(pos) == '\\') {
+                pos++;
+            } else if (data.at(pos) == '"') {
+                return pos + 1;
+            }
+        }
+        throw malformed(quotePos);
+    }
+
+    /**
+     * @return the position after the separator following the value ending at pos, or -1 if the container closes
+     */
+    long nextValue(long pos, char expectedSeparator) {
+        pos = skipWhitespace(pos);
+        if (pos < data.length() && data.at(pos) == expectedSeparator) {
+            return skipWhitespace(pos + 1);
+        } else if (pos < data.length() && (data.at(pos) == '}' || data.at(pos) == ']')) {
+            return -1;
+        }
+        throw malformed(pos);
+    }
+
+    /**
+     * @return pos, if the byte at it is expected
+     */
+    long require(long pos, char expected) {
+        if (pos >= data.length() || data.at(pos) != expected) {
+            throw malformed(pos);
+        }
+        return pos;
+    }
+
+    /**
+     * @param start the position of the opening quote
+     * @param end the position after the closing quote
+     */
+    boolean stringEquals(long start, long end, String value) {
+        long length = end - start - 2;
+        if (length != value.length()) { // escapes and multi-byte characters only ever make the encoded key longer
+            return length > value.length() && !isPlainAscii(start, end) && decodeString(start, end).equals(value);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            byte b = data.at(start + 1 + i);
+            if (c >= 0x80 || b < 0 || b == '\\') {
+                return decodeString(start, end).equals(value);
+            } else if (c != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String decodeString(long start, long end) {
+        return isPlain(start, end) ? data.decodeUtf8(start + 1, end - 1) : decode(start, end).textValue();
+    }
+
+    private boolean isPlain(long start, long end) {
+        for (long pos = start + 1; pos < end - 1; pos++) {
+            if (data.at(pos) == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Strings without escapes, literals and integers are decoded directly, anything else by the ObjectMapper
+     */
+    JsonNode decode(long start, long end) {
+        switch (data.at(start)) {
+            case '"':
+                if (isPlain(start, end)) {
+                    return nodeFactory.textNode(data.decodeUtf8(start + 1, end - 1));
+                }
+                break;
+            case 't':
+                if (isLiteral(start, end, "true")) {
+                    return nodeFactory.booleanNode(true);
+                }
+                break;
+            case 'f':
+                if (isLiteral(start, end, "false")) {
+                    return nodeFactory.booleanNode(false);
+                }
+                break;
+            case 'n':
+                if (isLiteral(start, end, "null")) {
+                    return nodeFactory.nullNode();
+                }
+                break;
+            default:
+                JsonNode number = decodeInteger(start, end);
+                if (number != null) {
+                    return number;
+                }
+                break;
+        }
+        try (JsonParser parser = data.createParser(objectMapper.getFactory(), start, end)) {
+            JsonNode node = objectMapper.readTree(parser);
+            return node != null ? node : nodeFactory.nullNode();
+        } catch (IOException e) {
+            throw new ReadException("Could not read data!", e);
+        }
+    }
+
+    private boolean isPlainAscii(long start, long end) {
+        for (long pos = start + 1; pos < end - 1; pos++) {
+            if (data.at(pos) == '\\' || data.at(pos) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isLiteral(long start, long end, String literal) {
+        if (end - start != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (data.at(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the integer node, or null if the value is not an integer known to fit in a long
+     */
+    private JsonNode decodeInteger(long start, long end) {
+        boolean negative = data.at(start) == '-';
+        long digitsStart = negative ? start + 1 : start;
+        if (end - digitsStart < 1 || end - digitsStart > 18 || objectMapper.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)) {
+            return null;
+        }
+        long value = 0;
+        for (long pos = digitsStart; pos < end; pos++) {
+            if (data.at(pos) < '0' || data.at(pos) > '9') {
+                return null;
+            }
+            value = value * 10 + (data.at(pos) - '0');
+        }
+        value = negative ? -value : value;
+        return value == (int) value ? nodeFactory.numberNode((int) value) : nodeFactory.numberNode(value);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static ReadException malformed(long pos) {
+        return new ReadException("Could not read data!", new IOException("Malformed json at offset " + pos));
+    }
+}
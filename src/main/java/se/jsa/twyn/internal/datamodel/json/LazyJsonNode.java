@@ -0,0 +1,151 @@
+package se.jsa.twyn.internal.datamodel.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import se.jsa.twyn.internal.datamodel.Node;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A node of a {@link LazyJsonDocument}, the value between two positions of its bytes. The members of an object, or
+ * the elements of an array, are located on the first lookup and remembered by the node.
+ */
+class LazyJsonNode extends InPlaceJsonNode {
+
+    private final LazyJsonDocument document;
+    private final long start;
+    private final long end;
+    private volatile long[] children;
+
+    private LazyJsonNode(LazyJsonDocument document, LazyJsonNode parent, String fieldName, int index, long start, long end) {
+        super(parent, fieldName, index);
+        this.document = document;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the root node of the document or null if the document is empty
+     */
+    static LazyJsonNode root(LazyJsonDocument document) {
+        long start = document.firstValue();
+        return start < 0 ? null : new LazyJsonNode(document, null, null, -1, start, document.valueEnd(start));
+    }
+
+    @Override
+    protected InPlaceJsonDocument document() {
+        return document;
+    }
+
+    @Override
+    protected JsonNode decode() {
+        return document.decode(start, end);
+    }
+
+    @Override
+    protected boolean isObject() {
+        return document.at(start) == '{';
+    }
+
+    @Override
+    protected boolean isArray() {
+        return document.at(start) == '[';
+    }
+
+    @Override
+    protected Node field(String name) {
+        long[] members = children();
+        for (int i = members.length - 4; i >= 0; i -= 4) { // the last of duplicate fields wins, as when parsed
+            if (document.stringEquals(members[i], members[i + 1], name)) {
+                return new LazyJsonNode(document, this, name, -1, members[i + 2], members[i + 3]);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected Node element(int index) {
+        long[] elements = children();
+        if (index * 2 >= elements.length) {
+            return null;
+        }
+        return new LazyJsonNode(document, this, null, index, elements[index * 2], elements[index * 2 + 1]);
+    }
+
+    @Override
+    protected Stream<Node> elements() {
+        long[] elements = children();
+        return IntStream.range(0, elements.length / 2)
+                .mapToObj(i -> new LazyJsonNode(document, this, null, i, elements[i * 2], elements[i * 2 + 1]));
+    }
+
+    @Override
+    protected Stream<Map.Entry<String, Node>> fields() {
+        long[] members = children();
+        Map<String, Node> fields = new LinkedHashMap<>(); // duplicate fields keep their first position and last value
+        for (int i = 0; i < members.length; i += 4) {
+            String name = document.decodeString(members[i], members[i + 1]);
+            fields.put(name, new LazyJsonNode(document, this, name, -1, members[i + 2], members[i + 3]));
+        }
+        return fields.entrySet().stream().map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * @return start and end of the key followed by start and end of the value of each member of an object, or start
+     * and end of each element of an array
+     */
+    private long[] children() {
+        long[] result = children;
+        if (result == null) {
+            children = result = isObject() ? scanMembers() : scanElements();
+        }
+        return result;
+    }
+
+    private long[] scanMembers() {
+        long[] members = new long[16];
+        int count = 0;
+        long pos = document.skipWhitespace(start + 1);
+        if (document.at(pos) == '}') {
+            return new long[0];
+        }
+        while (pos >= 0) {
+            if (count + 4 > members.length) {
+                members = Arrays.copyOf(members, members.length * 2);
+            }
+            long keyEnd = document.stringEnd(document.require(pos, '"'));
+            long valueStart = document.require(document.skipWhitespace(keyEnd), ':') + 1;
+            valueStart = document.skipWhitespace(valueStart);
+            long valueEnd = document.valueEnd(valueStart);
+            members[count++] = pos;
+            members[count++] = keyEnd;
+            members[count++] = valueStart;
+            members[count++] = valueEnd;
+            pos = document.nextValue(valueEnd, ',');
+        }
+        return Arrays.copyOf(members, count);
+    }
+
+    private long[] scanElements() {
+        long[] elements = new long[16];
+        int count = 0;
+        long pos = document.skipWhitespace(start + 1);
+        if (document.at(pos) == ']') {
+            return new long[0];
+        }
+        while (pos >= 0) {
+            if (count + 2 > elements.length) {
+                elements = Arrays.copyOf(elements, elements.length * 2);
+            }
+            long valueEnd = document.valueEnd(pos);
+            elements[count++] = pos;
+            elements[count++] = valueEnd;
+            pos = document.nextValue(valueEnd, ',');
+        }
+        return Arrays.copyOf(elements, count);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.datamodel.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import se.jsa.twyn.internal.proxy.common.Projection;
+
+/**
+ * Builds a json tree straight from a parser, keeping only what a {@link Projection} reaches. Everything else is
+ * skipped by the parser without being materialized. Skipped array elements are kept as nulls so that the indexes
+ * of the remaining elements are unchanged.
+ */
+class ProjectedTreeReader {
+    private final ObjectMapper objectMapper;
+    private final JsonNodeFactory nodeFactory;
+
+    ProjectedTreeReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.nodeFactory = objectMapper.getNodeFactory();
+    }
+
+    /**
+     * @return the root of the pruned tree, or null if the parser has no content
+     */
+    public JsonNode read(JsonParser parser, Projection projection) throws IOException {
+        objectMapper.getDeserializationConfig().initialize(parser);
+        if (parser.nextToken() == null) {
+            return null;
+        }
+        return readValue(parser, projection);
+    }
+
+    private JsonNode readValue(JsonParser parser, Projection projection) throws IOException {
+        if (projection.isAll()) {
+            return objectMapper.readTree(parser);
+        }
+        switch (parser.currentToken()) {
+            case START_OBJECT:
+                return readObject(parser, projection);
+            case START_ARRAY:
+                return readArray(parser, projection);
+            case VALUE_STRING:
+                return nodeFactory.textNode(parser.getText());
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return nodeFactory.booleanNode(parser.getBooleanValue());
+            case VALUE_NULL:
+                return nodeFactory.nullNode();
+            default:
+                return objectMapper.readTree(parser); // numbers, as configured on the ObjectMapper
+        }
+    }
+
+    private ObjectNode readObject(JsonParser parser, Projection projection) throws IOException {
+        ObjectNode node = nodeFactory.objectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            Projection fieldProjection = projection.field(fieldName);
+            parser.nextToken();
+            if (fieldProjection == null) {
+                parser.skipChildren();
+            } else {
+                node.set(fieldName, readValue(parser, fieldProjection));
+            }
+        }
+        return node;
+    }
+
+    private ArrayNode readArray(JsonParser parser, Projection projection) throws IOException {
+        ArrayNode node = nodeFactory.arrayNode();
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            Projection elementProjection = projection.element(index++);
+            if (elementProjection == null) {
+                parser.skipChildren();
+                node.addNull();
+            } else {
+                node.add(readValue(parser, elementProjection));
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,92 @@
+package se.jsa.twyn.internal.datamodel.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import se.jsa.twyn.internal.datamodel.Node;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A cursor into a {@link JsonTape}, the value at one position of the tape
+ */
+class TapeJsonNode extends InPlaceJsonNode {
+
+    private final JsonTape tape;
+    private final int position;
+
+    private TapeJsonNode(JsonTape tape, TapeJsonNode parent, String fieldName, int index, int position) {
+        super(parent, fieldName, index);
+        this.tape = tape;
+        this.position = position;
+    }
+
+    /**
+     * @return the root node of the tape or null if there is no tape
+     */
+    static TapeJsonNode root(JsonTape tape) {
+        return tape == null ? null : new TapeJsonNode(tape, null, null, -1, 0);
+    }
+
+    @Override
+    protected InPlaceJsonDocument document() {
+        return tape;
+    }
+
+    @Override
+    protected JsonNode decode() {
+        return tape.decode(position);
+    }
+
+    @Override
+    protected boolean isObject() {
+        return tape.type(position) == JsonTape.OBJECT;
+    }
+
+    @Override
+    protected boolean isArray() {
+        return tape.type(position) == JsonTape.ARRAY;
+    }
+
+    @Override
+    protected Node field(String name) {
+        int value = -1;
+        for (int member = position + 1; member < tape.next(position); member = tape.next(member + 1)) {
+            if (tape.stringEquals(member, name)) {
+                value = member + 1; // the last of duplicate fields wins, as when parsed
+            }
+        }
+        return value < 0 ? null : new TapeJsonNode(tape, this, name, -1, value);
+    }
+
+    @Override
+    protected Node element(int index) {
+        int element = position + 1;
+        for (int i = 0; i < index && element < tape.next(position); i++) {
+            element = tape.next(element);
+        }
+        return element < tape.next(position) ? new TapeJsonNode(tape, this, null, index, element) : null;
+    }
+
+    @Override
+    protected Stream<Node> elements() {
+        List<Node> elements = new ArrayList<>();
+        for (int element = position + 1; element < tape.next(position); element = tape.next(element)) {
+            elements.add(new TapeJsonNode(tape, this, null, elements.size(), element));
+        }
+        return elements.stream();
+    }
+
+    @Override
+    protected Stream<Map.Entry<String, Node>> fields() {
+        Map<String, Node> fields = new LinkedHashMap<>(); // duplicate fields keep their first position and last value
+        for (int member = position + 1; member < tape.next(position); member = tape.next(member + 1)) {
+            String name = tape.string(member);
+            fields.put(name, new TapeJsonNode(tape, this, name, -1, member + 1));
+        }
+        return fields.entrySet().stream().map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), e.getValue()));
+    }
+}
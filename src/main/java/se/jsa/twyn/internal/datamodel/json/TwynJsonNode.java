@@ -34,6 +34,13 @@ public class TwynJsonNode implements Node, CollectionNode, ContainerNode {
         return jsonNode;
     }
 
+    /**
+     * @return the json node of any node created by {@link TwynJsonNodeProducer}
+     */
+    static JsonNode jsonNodeOf(Node node) {
+        return node instanceof InPlaceJsonNode ? ((InPlaceJsonNode) node).toJsonNode() : ((TwynJsonNode) node).jsonNode;
+    }
+
     @Override
     public Node get(String name) {
         return TwynJsonNode.create(jsonNode.get(name));
@@ -46,7 +53,7 @@ public class TwynJsonNode implements Node, CollectionNode, ContainerNode {
 
     @Override
     public void set(String name, Node node) {
-        ((ObjectNode) jsonNode).set(name, ((TwynJsonNode) node).jsonNode);
+        ((ObjectNode) jsonNode).set(name, jsonNodeOf(node));
     }
 
     @Override
@@ -66,7 +73,7 @@ public class TwynJsonNode implements Node, CollectionNode, ContainerNode {
 
     @Override
     public void set(int index, Node node) {
-        ((ArrayNode) jsonNode).set(index, ((TwynJsonNode) node).jsonNode);
+        ((ArrayNode) jsonNode).set(index, jsonNodeOf(node));
     }
 
     @Override
@@ -1,16 +1,24 @@
 package se.jsa.twyn.internal.datamodel.json;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import se.jsa.twyn.ReadException;
 import se.jsa.twyn.internal.datamodel.Node;
 import se.jsa.twyn.internal.datamodel.NodeProducer;
+import se.jsa.twyn.internal.proxy.common.Projection;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Created by joakim on 2017-02-13.
@@ -18,9 +26,49 @@ import java.net.URL;
 public class TwynJsonNodeProducer implements NodeProducer {
 
     private ObjectMapper objectMapper;
+    private final ProjectedTreeReader projectedTreeReader;
+    private final Layout layout;
+
+    /**
+     * How read documents are held
+     */
+    private enum Layout {
+        TREE, LAZY, TAPE
+    }
 
     public TwynJsonNodeProducer(ObjectMapper objectMapper) {
+        this(objectMapper, false, Layout.TREE);
+    }
+
+    private TwynJsonNodeProducer(ObjectMapper objectMapper, boolean projecting, Layout layout) {
         this.objectMapper = objectMapper;
+        this.projectedTreeReader = projecting ? new ProjectedTreeReader(objectMapper) : null;
+        this.layout = layout;
+    }
+
+    /**
+     * Documents are read with a {@link JsonParser} into a tree, or tape, pruned to the {@link Projection} of the read
+     * type. Has no effect on lazy nodes
+     */
+    @Override
+    public NodeProducer withProjection() {
+        return new TwynJsonNodeProducer(objectMapper, true, layout);
+    }
+
+    /**
+     * Documents are kept as bytes, see {@link LazyJsonDocument}
+     */
+    @Override
+    public NodeProducer withLazyNodes() {
+        return new TwynJsonNodeProducer(objectMapper, projectedTreeReader != null, Layout.LAZY);
+    }
+
+    /**
+     * Documents are kept as tapes, see {@link JsonTape}
+     */
+    @Override
+    public NodeProducer withCompactNodes() {
+        return new TwynJsonNodeProducer(objectMapper, projectedTreeReader != null, Layout.TAPE);
     }
 
     @Override
@@ -34,65 +82,225 @@ public class TwynJsonNodeProducer implements NodeProducer {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T readNode(Node resolvedTargetNode, Class<T> valueType) {
+        JsonNode jsonNode = TwynJsonNode.jsonNodeOf(resolvedTargetNode);
+        Object scalar = readScalar(jsonNode, valueType);
+        if (scalar != null) {
+            return (T) scalar;
+        }
         try {
-            return objectMapper.treeToValue(((TwynJsonNode) resolvedTargetNode).toJsonNode(), valueType);
+            return objectMapper.treeToValue(jsonNode, valueType);
         } catch (JsonProcessingException e) {
             throw new ReadException("Could not map node=" + resolvedTargetNode + " to type=" + valueType, e);
         }
     }
 
     @Override
-    public Node read(InputStream inputStream, Class<?> type) {
-        try {
-            return TwynJsonNode.create(objectMapper.readTree(inputStream));
-        } catch (IOException e) {
-            throw new ReadException("Could not read data!", e);
+    public int readInt(Node resolvedTargetNode) {
+        JsonNode jsonNode = TwynJsonNode.jsonNodeOf(resolvedTargetNode);
+        return jsonNode.isInt() && readsScalarsDirectly() ? jsonNode.intValue() : NodeProducer.super.readInt(resolvedTargetNode);
+    }
+
+    @Override
+    public long readLong(Node resolvedTargetNode) {
+        JsonNode jsonNode = TwynJsonNode.jsonNodeOf(resolvedTargetNode);
+        return (jsonNode.isInt() || jsonNode.isLong()) && readsScalarsDirectly() ? jsonNode.longValue() : NodeProducer.super.readLong(resolvedTargetNode);
+    }
+
+    @Override
+    public double readDouble(Node resolvedTargetNode) {
+        JsonNode jsonNode = TwynJsonNode.jsonNodeOf(resolvedTargetNode);
+        return (jsonNode.isDouble() || jsonNode.isInt() || jsonNode.isLong()) && readsScalarsDirectly() ? jsonNode.doubleValue() : NodeProducer.super.readDouble(resolvedTargetNode);
+    }
+
+    @Override
+    public boolean readBoolean(Node resolvedTargetNode) {
+        JsonNode jsonNode = TwynJsonNode.jsonNodeOf(resolvedTargetNode);
+        return jsonNode.isBoolean() && readsScalarsDirectly() ? jsonNode.booleanValue() : NodeProducer.super.readBoolean(resolvedTargetNode);
+    }
+
+    /**
+     * Values of the node types the ObjectMapper maps in only one way are read straight from the node, anything else,
+     * including all conversions between node types, is left to the ObjectMapper
+     *
+     * @return the value or null if it must be mapped by the ObjectMapper
+     */
+    private Object readScalar(JsonNode jsonNode, Class<?> valueType) {
+        if (!jsonNode.isValueNode() || !readsScalarsDirectly()) {
+            return null;
+        }
+        if (valueType == String.class) {
+            return jsonNode.isTextual() ? jsonNode.textValue() : null;
+        } else if (valueType == Integer.class || valueType == int.class) {
+            return jsonNode.isInt() ? jsonNode.intValue() : null;
+        } else if (valueType == Long.class || valueType == long.class) {
+            return jsonNode.isInt() || jsonNode.isLong() ? jsonNode.longValue() : null;
+        } else if (valueType == Double.class || valueType == double.class) {
+            return jsonNode.isDouble() || jsonNode.isInt() || jsonNode.isLong() ? jsonNode.doubleValue() : null;
+        } else if (valueType == Boolean.class || valueType == boolean.class) {
+            return jsonNode.isBoolean() ? jsonNode.booleanValue() : null;
+        } else if (valueType == BigDecimal.class) {
+            return jsonNode.isBigDecimal() || jsonNode.isInt() || jsonNode.isLong() ? jsonNode.decimalValue() : null;
         }
+        return null;
+    }
+
+    /**
+     * Modules may replace how any type is deserialized
+     */
+    private boolean readsScalarsDirectly() {
+        return objectMapper.getRegisteredModuleIds().isEmpty();
+    }
+
+    @Override
+    public Node read(InputStream inputStream, Class<?> type) {
+        return read(() -> objectMapper.readTree(inputStream), () -> objectMapper.getFactory().createParser(inputStream), () -> readAllBytes(inputStream), type);
     }
 
     @Override
     public Node read(byte[] data, Class<?> type) {
-        try {
-            return TwynJsonNode.create(objectMapper.readTree(data));
-        } catch (IOException e) {
-            throw new ReadException("Could not read data!", e);
-        }
+        return read(() -> objectMapper.readTree(data), () -> objectMapper.getFactory().createParser(data), data::clone, type);
     }
 
     @Override
     public Node read(File file, Class<?> type) {
-        try {
-            return TwynJsonNode.create(objectMapper.readTree(file));
-        } catch (IOException e) {
-            throw new ReadException("Could not read data!", e);
-        }
+        return read(() -> objectMapper.readTree(file), () -> objectMapper.getFactory().createParser(file), () -> Files.readAllBytes(file.toPath()), type);
     }
 
     @Override
     public Node read(Reader reader, Class<?> type) {
-        try {
-            return TwynJsonNode.create(objectMapper.readTree(reader));
-        } catch (IOException e) {
-            throw new ReadException("Could not read data!", e);
-        }
+        return read(() -> objectMapper.readTree(reader), () -> objectMapper.getFactory().createParser(reader), () -> readAllBytes(reader), type);
     }
 
     @Override
     public Node read(String string, Class<?> type) {
+        return read(() -> objectMapper.readTree(string), () -> objectMapper.getFactory().createParser(string), () -> string.getBytes(StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public Node read(URL url, Class<?> type) {
+        return read(() -> objectMapper.readTree(url), () -> objectMapper.getFactory().createParser(url), () -> readAllBytes(url.openStream()), type);
+    }
+
+    /**
+     * A single heap buffer is parsed from its backing array, anything else through a stream over the buffers, without
+     * copying them first. Lazy nodes hold a copy, as the buffers may be reused once read
+     */
+    @Override
+    public Node read(ByteBuffer[] buffers, Class<?> type) {
+        return read(() -> readTree(createParser(buffers)), () -> createParser(buffers), () -> NodeProducer.toArray(buffers), type);
+    }
+
+    /**
+     * The file is memory mapped and read as lazy nodes, see {@link LazyJsonDocument}, whatever the layout
+     */
+    @Override
+    public Node read(Path path, Class<?> type) {
         try {
-            return TwynJsonNode.create(objectMapper.readTree(string));
+            return LazyJsonNode.root(new LazyJsonDocument(JsonBytes.map(path), objectMapper));
         } catch (IOException e) {
             throw new ReadException("Could not read data!", e);
         }
     }
 
-    @Override
-    public Node read(URL url, Class<?> type) {
+    private Node read(IOSupplier<JsonNode> tree, IOSupplier<JsonParser> parser, IOSupplier<byte[]> bytes, Class<?> type) {
         try {
-            return TwynJsonNode.create(objectMapper.readTree(url));
+            switch (layout) {
+                case LAZY:
+                    return LazyJsonNode.root(new LazyJsonDocument(JsonBytes.of(bytes.get()), objectMapper));
+                case TAPE:
+                    try (JsonParser jsonParser = parser.get()) {
+                        return TapeJsonNode.root(JsonTape.read(jsonParser, projectedTreeReader != null ? Projection.of(type) : Projection.ALL, objectMapper));
+                    }
+                default:
+                    if (projectedTreeReader == null) {
+                        return TwynJsonNode.create(tree.get());
+                    }
+                    try (JsonParser jsonParser = parser.get()) {
+                        return TwynJsonNode.create(projectedTreeReader.read(jsonParser, Projection.of(type)));
+                    }
+            }
         } catch (IOException e) {
             throw new ReadException("Could not read data!", e);
         }
     }
+
+    private JsonNode readTree(JsonParser parser) throws IOException {
+        try (JsonParser jsonParser = parser) {
+            return objectMapper.readTree(jsonParser);
+        }
+    }
+
+    private JsonParser createParser(ByteBuffer[] buffers) throws IOException {
+        if (buffers.length == 1 && buffers[0].hasArray()) {
+            ByteBuffer buffer = buffers[0];
+            return objectMapper.getFactory().createParser(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return objectMapper.getFactory().createParser(new ByteBuffersInputStream(buffers));
+    }
+
+    private static byte[] readAllBytes(Reader reader) throws IOException {
+        try (Reader in = reader) {
+            StringBuilder result = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                result.append(buffer, 0, read);
+            }
+            return result.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] readAllBytes(InputStream inputStream) throws IOException {
+        try (InputStream in = inputStream) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Reads duplicates of the buffers, so that the buffers themselves are left unchanged
+     */
+    private static final class ByteBuffersInputStream extends InputStream {
+        private final ByteBuffer[] buffers;
+        private int current;
+
+        private ByteBuffersInputStream(ByteBuffer[] buffers) {
+            this.buffers = new ByteBuffer[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                this.buffers[i] = buffers[i].duplicate();
+            }
+        }
+
+        private ByteBuffer currentBuffer() {
+            while (current < buffers.length && !buffers[current].hasRemaining()) {
+                current++;
+            }
+            return current < buffers.length ? buffers[current] : null;
+        }
+
+        @Override
+        public int read() {
+            ByteBuffer buffer = currentBuffer();
+            return buffer == null ? -1 : buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = currentBuffer();
+            if (buffer == null) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, count);
+            return count;
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
 }
@@ -15,9 +15,26 @@
  */
 package se.jsa.twyn.internal.proxy;
 
+import java.nio.file.Path;
+import java.util.Collection;
+
 import se.jsa.twyn.internal.TwynContext;
 import se.jsa.twyn.internal.datamodel.Node;
 
 public interface TwynProxyBuilder {
 	<T> T buildProxy(Class<T> type, TwynContext twynContext, Node node);
+
+	/**
+	 * Prepares proxies of the given types ahead of their first use, if the builder has anything to prepare
+	 */
+	default void precompile(Collection<Class<?>> types, TwynContext twynContext) {
+		// nothing to prepare
+	}
+
+	/**
+	 * @return a builder storing the classes it compiles in the given directory, or this builder if it compiles none
+	 */
+	default TwynProxyBuilder withClassCacheDirectory(Path directory) {
+		return this;
+	}
 }
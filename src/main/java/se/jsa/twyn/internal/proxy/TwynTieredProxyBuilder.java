@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import se.jsa.twyn.internal.TwynContext;
+import se.jsa.twyn.internal.datamodel.Node;
+import se.jsa.twyn.internal.proxy.cg.TwynProxyClassBuilder;
+import se.jsa.twyn.internal.proxy.reflect.TwynProxyInvocationHandlerBuilder;
+
+/**
+ * Serves every type through java proxies until it has been proxied promotionThreshold times, or its java proxies have
+ * been called promotionThreshold times, then compiles a generated class for it in the background and serves new
+ * proxies of the type from that class once it is ready. No caller ever waits for the compiler, types that fail to
+ * compile stay on java proxies.
+ */
+public class TwynTieredProxyBuilder implements TwynProxyBuilder {
+	private static final Logger LOGGER = Logger.getLogger(TwynTieredProxyBuilder.class.getName());
+	private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "twyn-tiered-compiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final TwynProxyInvocationHandlerBuilder interpreter = new TwynProxyInvocationHandlerBuilder();
+	private final TwynProxyClassBuilder compiler;
+	private final int promotionThreshold;
+	private final Executor executor;
+	private final Map<Class<?>, Tier> tiers = new ConcurrentHashMap<>();
+
+	public TwynTieredProxyBuilder(int promotionThreshold, TwynProxyClassBuilder compiler) {
+		this(promotionThreshold, compiler, COMPILER);
+	}
+
+	TwynTieredProxyBuilder(int promotionThreshold, TwynProxyClassBuilder compiler, Executor executor) {
+		if (promotionThreshold < 1) {
+			throw new IllegalArgumentException("promotionThreshold must be at least 1, was " + promotionThreshold);
+		}
+		this.promotionThreshold = promotionThreshold;
+		this.compiler = compiler;
+		this.executor = executor;
+	}
+
+	/**
+	 * Types that are asked for explicitly are compiled right away
+	 */
+	@Override
+	public void precompile(Collection<Class<?>> types, TwynContext twynContext) {
+		compiler.precompile(types, twynContext);
+		types.forEach(t -> getTier(t).compiled = true);
+	}
+
+	@Override
+	public <T> T buildProxy(Class<T> type, TwynContext twynContext, Node node) {
+		Tier tier = getTier(type);
+		if (tier.compiled) {
+			return compiler.buildProxy(type, twynContext, node);
+		}
+		count(tier.proxyCount, type, tier, twynContext);
+		return interpreter.buildProxy(type, twynContext, node, () -> count(tier.invocationCount, type, tier, twynContext));
+	}
+
+	private void count(AtomicInteger counter, Class<?> type, Tier tier, TwynContext twynContext) {
+		if (counter.get() < promotionThreshold && counter.incrementAndGet() == promotionThreshold
+				&& tier.scheduled.compareAndSet(false, true)) {
+			executor.execute(() -> promote(type, tier, twynContext));
+		}
+	}
+
+	private void promote(Class<?> type, Tier tier, TwynContext twynContext) {
+		try {
+			compiler.precompile(Collections.singleton(type), twynContext);
+			tier.compiled = true;
+			LOGGER.log(Level.FINE, "Promoted type " + type + " to a generated class");
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Could not generate class for type " + type + ", it will keep using java proxies", e);
+		}
+	}
+
+	private Tier getTier(Class<?> type) {
+		Tier tier = tiers.get(type);
+		return tier != null ? tier : tiers.computeIfAbsent(type, t -> new Tier());
+	}
+
+	@Override
+	public TwynTieredProxyBuilder withClassCacheDirectory(Path directory) {
+		return new TwynTieredProxyBuilder(promotionThreshold, compiler.withClassCacheDirectory(directory), executor);
+	}
+
+	@Override
+	public String toString() {
+		return "TwynTieredProxyBuilder [promotionThreshold=" + promotionThreshold + ", compiler=" + compiler + "]";
+	}
+
+	private static final class Tier {
+		final AtomicInteger proxyCount = new AtomicInteger();
+		final AtomicInteger invocationCount = new AtomicInteger();
+		final AtomicBoolean scheduled = new AtomicBoolean();
+		volatile boolean compiled = false;
+	}
+}
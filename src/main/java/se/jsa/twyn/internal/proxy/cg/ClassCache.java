@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.cg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import se.jsa.twyn.internal.proxy.common.ProxyClassLoader;
+
+/**
+ * Directory of compiled proxy classes that survives restarts. Each class is stored in a directory named after the
+ * class and a hash of its generated source and the Twyn version, so any change to the interface, the code templates
+ * or Twyn itself leads to a new entry. Entries that no longer match are removed when their replacement is stored,
+ * entries that cannot be loaded are removed and compiled again.
+ */
+class ClassCache {
+	private static final Logger LOGGER = Logger.getLogger(ClassCache.class.getName());
+	private static final String TWYN_VERSION = readTwynVersion();
+
+	private final Path directory;
+
+	ClassCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Loads the classes of files that were compiled together in one class loader, as they may refer to each other.
+	 *
+	 * @return the classes by the type they implement, or empty unless all of them are cached
+	 */
+	Optional<Map<Class<?>, Class<?>>> load(Map<Class<?>, TwynProxyClassJavaFile> javaFiles) {
+		Map<String, byte[]> classFiles = new HashMap<>();
+		for (TwynProxyClassJavaFile javaFile : javaFiles.values()) {
+			Path entry = entryDirectory(javaFile);
+			if (!Files.isDirectory(entry)) {
+				return Optional.empty();
+			}
+			try {
+				classFiles.putAll(readClassFiles(entry));
+			} catch (IOException | UncheckedIOException e) {
+				LOGGER.log(Level.WARNING, "Removing unreadable cached class " + javaFile.getCanonicalClassName() + " in " + entry, e);
+				delete(entry);
+				return Optional.empty();
+			}
+		}
+		Class<?> firstType = javaFiles.keySet().iterator().next();
+		ProxyClassLoader classLoader = new ProxyClassLoader(firstType.getClassLoader(), classFiles);
+		Map<Class<?>, Class<?>> cachedClasses = new HashMap<>();
+		try {
+			for (Map.Entry<Class<?>, TwynProxyClassJavaFile> javaFile : javaFiles.entrySet()) {
+				Class<?> cachedClass = classLoader.loadClass(javaFile.getValue().getCanonicalClassName());
+				cachedClasses.put(javaFile.getKey(), cachedClass);
+			}
+		} catch (ClassNotFoundException | LinkageError e) {
+			LOGGER.log(Level.WARNING, "Removing unusable cached classes for types " + javaFiles.keySet(), e);
+			javaFiles.values().forEach(javaFile -> delete(entryDirectory(javaFile)));
+			return Optional.empty();
+		}
+		LOGGER.log(Level.FINE, "Loaded cached classes for types " + javaFiles.keySet());
+		return Optional.of(cachedClasses);
+	}
+
+	/**
+	 * @return a new directory to compile classes into before they are stored
+	 */
+	Path createOutputDirectory() throws IOException {
+		Files.createDirectories(directory);
+		return Files.createTempDirectory(directory, "compiling.");
+	}
+
+	/**
+	 * Copies the class files of the given file, including those of its nested classes, from the directory they were
+	 * compiled into to their entry
+	 */
+	void store(TwynProxyClassJavaFile javaFile, Path outputDirectory) {
+		Path entry = entryDirectory(javaFile);
+		Path stagingDirectory = null;
+		try {
+			stagingDirectory = Files.createTempDirectory(directory, entry.getFileName() + ".");
+			copyClassFiles(javaFile, outputDirectory, stagingDirectory);
+			Files.move(stagingDirectory, entry, StandardCopyOption.ATOMIC_MOVE);
+			removeStaleEntries(javaFile, entry);
+		} catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+			delete(stagingDirectory); // stored concurrently by another Twyn instance
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Could not store compiled class " + javaFile.getCanonicalClassName() + " in " + directory, e);
+			if (stagingDirectory != null) {
+				delete(stagingDirectory);
+			}
+		}
+	}
+
+	void discard(Path outputDirectory) {
+		delete(outputDirectory);
+	}
+
+	private static void copyClassFiles(TwynProxyClassJavaFile javaFile, Path outputDirectory, Path targetDirectory) throws IOException {
+		String className = javaFile.getCanonicalClassName();
+		String packagePath = className.substring(0, className.lastIndexOf('.') + 1).replace('.', '/');
+		String simpleName = className.substring(className.lastIndexOf('.') + 1);
+		Path sourcePackage = outputDirectory.resolve(packagePath);
+		Path targetPackage = Files.createDirectories(targetDirectory.resolve(packagePath));
+		try (DirectoryStream<Path> classFiles = Files.newDirectoryStream(sourcePackage, simpleName + "{.class,$*.class}")) {
+			for (Path classFile : classFiles) {
+				Files.copy(classFile, targetPackage.resolve(classFile.getFileName().toString()));
+			}
+		}
+	}
+
+	private void removeStaleEntries(TwynProxyClassJavaFile javaFile, Path current) throws IOException {
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, javaFile.getCanonicalClassName() + "-*")) {
+			for (Path entry : entries) {
+				if (!entry.equals(current) && entry.getFileName().toString().indexOf('.', javaFile.getCanonicalClassName().length()) < 0) {
+					delete(entry);
+				}
+			}
+		}
+	}
+
+	private Path entryDirectory(TwynProxyClassJavaFile javaFile) {
+		return directory.resolve(javaFile.getCanonicalClassName() + "-" + hash(TWYN_VERSION + "\n" + javaFile.getCode()));
+	}
+
+	private static Map<String, byte[]> readClassFiles(Path entry) throws IOException {
+		Map<String, byte[]> classFiles = new HashMap<>();
+		try (Stream<Path> files = Files.walk(entry)) {
+			files.filter(f -> f.getFileName().toString().endsWith(".class")).forEach(f -> {
+				String relativePath = entry.relativize(f).toString().replace(f.getFileSystem().getSeparator(), ".");
+				try {
+					classFiles.put(relativePath.substring(0, relativePath.length() - ".class".length()), Files.readAllBytes(f));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		return classFiles;
+	}
+
+	private static void delete(Path path) {
+		try (Stream<Path> files = Files.walk(path)) {
+			files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+		} catch (IOException | UncheckedIOException e) {
+			LOGGER.log(Level.WARNING, "Could not delete " + path, e);
+		}
+	}
+
+	private static String hash(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			StringBuilder result = new StringBuilder();
+			for (int i = 0; i < 16; i++) {
+				result.append(String.format("%02x", digest[i]));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private static String readTwynVersion() {
+		try (InputStream in = ClassCache.class.getResourceAsStream("/twyn-version.properties")) {
+			Properties properties = new Properties();
+			if (in != null) {
+				properties.load(in);
+			}
+			return properties.getProperty("version", "unknown");
+		} catch (IOException e) {
+			return "unknown";
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ClassCache [directory=" + directory + "]";
+	}
+}
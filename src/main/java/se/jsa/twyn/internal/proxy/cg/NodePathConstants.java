@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.cg;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import se.jsa.twyn.internal.proxy.common.CacheSlots;
+import se.jsa.twyn.internal.proxy.common.NodePath;
+import se.jsa.twyn.internal.proxy.common.NodeResolver;
+import se.jsa.twyn.internal.readmodel.ImplementedMethod;
+import se.jsa.twyn.internal.readmodel.ProxiedInterface;
+
+/**
+ * The distinct node paths of a generated proxy class, each declared once as a static constant, and the cache
+ * slots of its methods.
+ */
+class NodePathConstants {
+	private final CacheSlots cacheSlots;
+	private final Map<NodePath, Integer> constants = new LinkedHashMap<>();
+
+	public NodePathConstants(ProxiedInterface implementedInterface, NodeResolver nodeResolver) {
+		this.cacheSlots = CacheSlots.create(implementedInterface, nodeResolver);
+		for (ImplementedMethod method : implementedInterface.getMethods()) {
+			if (CacheSlots.hasNodePath(method)) {
+				constants.putIfAbsent(cacheSlots.getNodePath(method), constants.size());
+			}
+		}
+	}
+
+	public String getConstantName(ImplementedMethod method) {
+		return "PATH_" + constants.get(cacheSlots.getNodePath(method));
+	}
+
+	public String getCacheKey(ImplementedMethod method) {
+		return Integer.toString(cacheSlots.getSlot(method));
+	}
+
+	public String getCacheClears(ImplementedMethod method) {
+		return IntStream.of(cacheSlots.getClearedSlots(method))
+				.mapToObj(slot -> "cache.clear(" + slot + ");")
+				.collect(Collectors.joining("\n\t\t"));
+	}
+
+	public int getCacheSize() {
+		return cacheSlots.size();
+	}
+
+	public String getDeclarations() {
+		return constants.entrySet().stream()
+				.map(e -> "\tprivate static final NodePath PATH_" + e.getValue() + " = " + e.getKey().toJavaExpression() + ";")
+				.collect(Collectors.joining("\n"));
+	}
+
+}
@@ -20,9 +20,16 @@ import static javax.tools.StandardLocation.CLASS_PATH;
 import java.io.IOException;
 import java.io.Writer;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.annotation.processing.AbstractProcessor;
@@ -32,8 +39,11 @@ import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
+import javax.tools.FileObject;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
 
 import se.jsa.twyn.TwynProxy;
 import se.jsa.twyn.internal.IdentityMethods;
@@ -45,6 +55,7 @@ import se.jsa.twyn.internal.readmodel.ProxiedInterface;
 public class TwynProcessor extends AbstractProcessor {
 	private static final Logger LOGGER = Logger.getLogger(TwynProcessor.class.getName());
 	private TwynProxyClassJavaTemplates templates;
+	private final List<String> indexClassNames = new ArrayList<>();
 
 	@Override
 	public synchronized void init(ProcessingEnvironment processingEnv) {
@@ -60,17 +71,118 @@ public class TwynProcessor extends AbstractProcessor {
 	@Override
 	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
 		Require.that(templates != null, () -> new IllegalStateException("Cannot run without templates!"));
-		generateJavaFiles(roundEnv.getElementsAnnotatedWith(TwynProxy.class).stream());
+		if (roundEnv.processingOver()) {
+			generateServiceFile();
+		} else {
+			List<TypeElement> typeElements = new ArrayList<>();
+			collectTypes(roundEnv.getElementsAnnotatedWith(TwynProxy.class).stream(), typeElements);
+			Set<String> roundTypes = typeElements.stream().map(t -> t.getQualifiedName().toString()).collect(Collectors.toSet());
+			Map<String, String> proxyClasses = new TreeMap<>();
+			Map<String, String> streamedClasses = new TreeMap<>();
+			for (TypeElement typeElement : typeElements) {
+				proxyClasses.put(typeElement.getQualifiedName().toString(), generateJavaFile(typeElement, name -> getGeneratedClassName(name, roundTypes)));
+				if (typeElement.getKind() == ElementKind.INTERFACE && isStreamed(typeElement)) {
+					streamedClasses.put(typeElement.getQualifiedName().toString(), generateStreamedJavaFile(typeElement));
+				}
+			}
+			if (!proxyClasses.isEmpty()) {
+				generateIndex(proxyClasses, streamedClasses);
+			}
+		}
 		return true;
 	}
 
-	private void generateJavaFiles(Stream<? extends Element> elements) {
+	private static void collectTypes(Stream<? extends Element> elements, List<TypeElement> typeElements) {
 		elements.filter(e -> (e instanceof TypeElement))
 			.map(e -> TypeElement.class.cast(e))
-			.forEach(typeElement -> { generateJavaFile(typeElement); generateJavaFiles(typeElement.getEnclosedElements().stream()); });
+			.forEach(typeElement -> {
+				typeElements.add(typeElement);
+				collectTypes(typeElement.getEnclosedElements().stream(), typeElements);
+			});
+	}
+
+	/**
+	 * Nested proxies are created directly when their interface gets a generated class in this round, or got one
+	 * when it was compiled
+	 */
+	private Optional<String> getGeneratedClassName(String canonicalName, Set<String> roundTypes) {
+		TypeElement typeElement = processingEnv.getElementUtils().getTypeElement(canonicalName);
+		if (typeElement == null || typeElement.getKind() != ElementKind.INTERFACE) {
+			return Optional.empty();
+		}
+		String generatedClassName = TwynProxyClassJavaFile.generateClassName(ProxiedInterface.of(typeElement));
+		return roundTypes.contains(canonicalName) || processingEnv.getElementUtils().getTypeElement(generatedClassName) != null
+				? Optional.of(generatedClassName)
+				: Optional.empty();
+	}
+
+	/**
+	 * A type is read by streaming if it, or any type enclosing it, is annotated with @TwynProxy(streaming = true).
+	 */
+	private static boolean isStreamed(Element element) {
+		for (Element e = element; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			TwynProxy twynProxy = e.getAnnotation(TwynProxy.class);
+			if (twynProxy != null && twynProxy.streaming()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Optional<String> getStreamedClassName(String canonicalName) {
+		TypeElement typeElement = processingEnv.getElementUtils().getTypeElement(canonicalName);
+		if (typeElement == null || typeElement.getKind() != ElementKind.INTERFACE) {
+			return Optional.empty();
+		}
+		if (!isStreamed(typeElement)) {
+			throw new IllegalArgumentException("Type " + canonicalName + " is returned by a streamed type but is not annotated with @TwynProxy(streaming = true) itself");
+		}
+		return Optional.of(TwynStreamedClassJavaFile.generateClassName(ProxiedInterface.of(typeElement)));
+	}
+
+	/**
+	 * Every round with generated proxies gets its own index class, named after the interfaces it covers so that
+	 * indexes from different compilations do not collide. The indexes are registered as services in the last round.
+	 */
+	private void generateIndex(Map<String, String> proxyClasses, Map<String, String> streamedClasses) {
+		String firstInterface = proxyClasses.keySet().iterator().next();
+		String packageName = processingEnv.getElementUtils().getPackageOf(processingEnv.getElementUtils().getTypeElement(firstInterface)).getQualifiedName().toString();
+		String simpleName = TwynProxySources.indexSimpleName(proxyClasses);
+		String className = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		try {
+			JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(className);
+			try (Writer writer = sourceFile.openWriter()) {
+				writer.write(templates.templateTwynProxyIndex(packageName, simpleName, proxyClasses, streamedClasses));
+			}
+			indexClassNames.add(className);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not generate proxy index " + className, e);
+			throw new IllegalArgumentException("Could not generate proxy index " + className, e);
+		}
 	}
 
-	private void generateJavaFile(TypeElement typeElement) {
+	private void generateServiceFile() {
+		if (indexClassNames.isEmpty()) {
+			return;
+		}
+		String serviceFile = TwynProxySources.SERVICE_FILE;
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", serviceFile);
+			try (Writer writer = resource.openWriter()) {
+				for (String indexClassName : indexClassNames) {
+					writer.write(indexClassName + "\n");
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not write " + serviceFile, e);
+			throw new IllegalArgumentException("Could not write " + serviceFile, e);
+		}
+	}
+
+	/**
+	 * @return the name of the generated class
+	 */
+	private String generateJavaFile(TypeElement typeElement, Function<String, Optional<String>> generatedClassNames) {
 		try {
 			LOGGER.info("Generating file for: " + typeElement);
 
@@ -78,17 +190,44 @@ public class TwynProcessor extends AbstractProcessor {
 					ProxiedInterface.of(typeElement),
 					templates,
 					new IdentityMethods(),
-					false);
+					false,
+					generatedClassNames);
 			JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(javaFile.getCanonicalClassName());
 			try (Writer writer = sourceFile.openWriter()) {
 				writer.write(javaFile.getCode());
 			}
 
 			LOGGER.info("Generated: file for " + sourceFile.toUri().toString());
+			return javaFile.getCanonicalClassName();
 		} catch (Throwable t) {
 			LOGGER.log(Level.SEVERE, "Could not generate proxy class for: " + typeElement.getQualifiedName(), t);
 			throw new IllegalArgumentException("Could not generate proxy for class " + typeElement.getQualifiedName(), t);
 		}
 	}
 
+	/**
+	 * @return the name of the generated streaming class
+	 */
+	private String generateStreamedJavaFile(TypeElement typeElement) {
+		try {
+			LOGGER.info("Generating streamed file for: " + typeElement);
+
+			TwynProxyClassJavaFile javaFile = TwynStreamedClassJavaFile.create(
+					ProxiedInterface.of(typeElement),
+					templates,
+					new IdentityMethods(),
+					this::getStreamedClassName);
+			JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(javaFile.getCanonicalClassName());
+			try (Writer writer = sourceFile.openWriter()) {
+				writer.write(javaFile.getCode());
+			}
+
+			LOGGER.info("Generated: streamed file for " + sourceFile.toUri().toString());
+			return javaFile.getCanonicalClassName();
+		} catch (Throwable t) {
+			LOGGER.log(Level.SEVERE, "Could not generate streamed class for: " + typeElement.getQualifiedName(), t);
+			throw new IllegalArgumentException("Could not generate streamed class for " + typeElement.getQualifiedName(), t);
+		}
+	}
+
 }
\ No newline at end of file
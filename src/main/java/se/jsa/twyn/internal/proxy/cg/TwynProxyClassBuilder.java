@@ -21,25 +21,86 @@ import se.jsa.twyn.TwynProxyException;
 import se.jsa.twyn.internal.TwynContext;
 import se.jsa.twyn.internal.datamodel.Node;
 import se.jsa.twyn.internal.proxy.TwynProxyBuilder;
+import se.jsa.twyn.internal.proxy.common.ReachableInterfaces;
 import se.jsa.twyn.internal.readmodel.ProxiedInterface;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 public class TwynProxyClassBuilder implements TwynProxyBuilder {
 	private static final Logger LOGGER = Logger.getLogger(TwynProxyClassBuilder.class.getName());
+	/**
+	 * Compilations run on a few shared threads, so that many types asked for at once do not start as many javac runs
+	 */
+	private static final ExecutorService COMPILER = Executors.newFixedThreadPool(
+			Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), r -> {
+				Thread thread = new Thread(r, "twyn-compiler");
+				thread.setDaemon(true);
+				return thread;
+			});
 
 	private final JavaSourceCompiler javaSourceCompiler = new JavaSourceCompilerImpl();
-	private final Map<Class<?>, Class<?>> implementations = new ConcurrentHashMap<Class<?>, Class<?>>();
+	private static final ClassValue<BiFunction<TwynContext, Node, Object>> FACTORIES = new ClassValue<BiFunction<TwynContext, Node, Object>>() {
+		@Override
+		protected BiFunction<TwynContext, Node, Object> computeValue(Class<?> typeImpl) {
+			return createFactory(typeImpl);
+		}
+	};
+
+	private final Map<Class<?>, CompletableFuture<BiFunction<TwynContext, Node, Object>>> implementations = new ConcurrentHashMap<>();
+	/**
+	 * The factories of compiled types, published once their compilation has completed so that proxies of them are
+	 * built after a single lookup
+	 */
+	private final ClassValue<AtomicReference<BiFunction<TwynContext, Node, Object>>> compiled = new ClassValue<AtomicReference<BiFunction<TwynContext, Node, Object>>>() {
+		@Override
+		protected AtomicReference<BiFunction<TwynContext, Node, Object>> computeValue(Class<?> type) {
+			return new AtomicReference<>();
+		}
+	};
 	private final TwynProxyClassJavaTemplates templates;
+	private final ClassCache classCache;
+	private final Map<Class<?>, Class<?>> prebuiltClasses = loadPrebuiltClasses();
 
 	public TwynProxyClassBuilder() {
+		this((ClassCache) null);
+	}
+
+	/**
+	 * @param classCacheDirectory where compiled classes are stored and looked up before compiling
+	 */
+	public TwynProxyClassBuilder(Path classCacheDirectory) {
+		this(new ClassCache(classCacheDirectory));
+	}
+
+	private TwynProxyClassBuilder(ClassCache classCache) {
+		this.classCache = classCache;
 		try {
 			templates = TwynProxyClassJavaTemplates.create();
 		} catch (IOException | URISyntaxException e) {
@@ -47,57 +108,323 @@ public class TwynProxyClassBuilder implements TwynProxyBuilder {
 		}
 	}
 
+	/**
+	 * Compiles the given types, and all interfaces reachable from them, in one compilation unit. Types that are
+	 * already compiled, or are being compiled by another thread, are not compiled again.
+	 */
+	@Override
 	public void precompile(Collection<Class<?>> types, TwynContext twyn) {
-		types.stream().parallel().forEach(((t) -> getImplementingClass(t, twyn)));
+		Map<Class<?>, CompletableFuture<BiFunction<TwynContext, Node, Object>>> claimed = claim(ReachableInterfaces.of(types));
+		if (!claimed.isEmpty()) {
+			complete(claimed, () -> loadOrCreateClasses(claimed.keySet(), claimed.keySet(), twyn));
+		}
+		types.forEach(t -> getFactory(t, twyn));
 	}
 
 	@Override
 	public <T> T buildProxy(Class<T> type, TwynContext twyn, Node node) {
-	    return type.cast(instantiate(getImplementingClass(type, twyn), twyn, node));
+		BiFunction<TwynContext, Node, Object> factory = compiled.get(type).get();
+		return type.cast((factory != null ? factory : getFactory(type, twyn)).apply(twyn, node));
 	}
 
-	private Class<?> getImplementingClass(Class<?> type, TwynContext twyn) {
-		if (!implementations.containsKey(type)) {
-			Class<?> createdClass = loadOrCreateClass(type, twyn);
-			return implementations.computeIfAbsent(type, t -> createdClass);
+	private BiFunction<TwynContext, Node, Object> getFactory(Class<?> type, TwynContext twyn) {
+		CompletableFuture<BiFunction<TwynContext, Node, Object>> factory = implementations.get(type);
+		if (factory == null) {
+			Set<Class<?>> reachableTypes = reachableFrom(type);
+			CompletableFuture<BiFunction<TwynContext, Node, Object>> createdFactory = new CompletableFuture<>();
+			factory = implementations.putIfAbsent(type, createdFactory);
+			if (factory == null) {
+				Map<Class<?>, CompletableFuture<BiFunction<TwynContext, Node, Object>>> claimed = new LinkedHashMap<>();
+				claimed.put(type, createdFactory);
+				claimed.putAll(claim(reachableTypes));
+				complete(claimed, () -> loadOrCreateClasses(claimed.keySet(), Collections.singleton(type), twyn));
+				factory = createdFactory;
+			}
+		}
+		try {
+			BiFunction<TwynContext, Node, Object> completed = factory.join();
+			compiled.get(type).set(completed);
+			return completed;
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
 		}
-		return implementations.get(type);
 	}
 
-	private Class<?> loadOrCreateClass(Class<?> type, TwynContext twynContext) {
+	/**
+	 * Interfaces reachable from a type are compiled with it, so that its nested proxies are created directly. Types
+	 * whose reachable interfaces cannot be resolved are compiled alone and report their errors when compiled.
+	 */
+	private static Set<Class<?>> reachableFrom(Class<?> type) {
 		try {
-			String className = TwynProxyClassJavaFile.generateClassName(ProxiedInterface.of(type));
-			Class<?> prebuiltClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+			return ReachableInterfaces.of(Collections.singleton(type));
+		} catch (RuntimeException e) {
+			return Collections.singleton(type);
+		}
+	}
+
+	/**
+	 * @return factories for the types that are not already compiled or being compiled, for this thread to complete
+	 */
+	private Map<Class<?>, CompletableFuture<BiFunction<TwynContext, Node, Object>>> claim(Collection<Class<?>> types) {
+		Map<Class<?>, CompletableFuture<BiFunction<TwynContext, Node, Object>>> claimed = new LinkedHashMap<>();
+		for (Class<?> type : types) {
+			CompletableFuture<BiFunction<TwynContext, Node, Object>> factory = new CompletableFuture<>();
+			if (implementations.putIfAbsent(type, factory) == null) {
+				claimed.put(type, factory);
+			}
+		}
+		return claimed;
+	}
+
+	/**
+	 * Completes the factories claimed by this thread. On failure they are released, so that the types are compiled
+	 * again when next asked for, and threads waiting for them get the failure.
+	 */
+	private void complete(Map<Class<?>, CompletableFuture<BiFunction<TwynContext, Node, Object>>> claimed, Supplier<Map<Class<?>, Class<?>>> typeImpls) {
+		try {
+			Map<Class<?>, BiFunction<TwynContext, Node, Object>> factories = new HashMap<>();
+			onCompiler(typeImpls).forEach((type, typeImpl) -> factories.put(type, FACTORIES.get(typeImpl)));
+			claimed.forEach((type, factory) -> {
+				BiFunction<TwynContext, Node, Object> typeFactory = factories.get(type);
+				if (typeFactory != null) {
+					factory.complete(typeFactory);
+				} else if (!factory.isDone()) {
+					implementations.remove(type, factory);
+					factory.completeExceptionally(new TwynProxyException("No class was created for " + type.getName()));
+				}
+			});
+		} catch (RuntimeException | Error e) {
+			claimed.forEach((type, factory) -> {
+				implementations.remove(type, factory);
+				factory.completeExceptionally(e);
+			});
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs a compilation on the shared compiler threads, with the context class loader of the waiting thread
+	 */
+	private static <T> T onCompiler(Supplier<T> compilation) {
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				Thread thread = Thread.currentThread();
+				ClassLoader threadClassLoader = thread.getContextClassLoader();
+				thread.setContextClassLoader(contextClassLoader);
+				try {
+					return compilation.get();
+				} finally {
+					thread.setContextClassLoader(threadClassLoader);
+				}
+			}, COMPILER).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @param types the claimed types, compiled together so that they create each others proxies directly
+	 * @param requiredTypes the types that fail the call if they cannot be compiled, other types are released
+	 */
+	private Map<Class<?>, Class<?>> loadOrCreateClasses(Set<Class<?>> types, Set<Class<?>> requiredTypes, TwynContext twynContext) {
+		Map<Class<?>, Class<?>> typeImpls = new HashMap<>();
+		Set<Class<?>> generatedTypes = new LinkedHashSet<>();
+		for (Class<?> type : types) {
+			Optional<Class<?>> prebuiltClass = loadPrebuiltClass(type);
+			if (prebuiltClass.isPresent()) {
+				typeImpls.put(type, prebuiltClass.get());
+			} else {
+				generatedTypes.add(type);
+			}
+		}
+		Map<Class<?>, TwynProxyClassJavaFile> javaFiles = createJavaFiles(generatedTypes, requiredTypes, twynContext);
+		if (javaFiles.isEmpty()) {
+			return typeImpls;
+		}
+		Optional<Map<Class<?>, Class<?>>> cachedClasses = classCache != null ? classCache.load(javaFiles) : Optional.empty();
+		if (cachedClasses.isPresent()) {
+			typeImpls.putAll(cachedClasses.get());
+		} else if (javaFiles.size() > 1) {
+			try {
+				typeImpls.putAll(compile(javaFiles));
+			} catch (TwynProxyException e) {
+				LOGGER.log(Level.FINE, "Could not compile " + javaFiles.size() + " classes together, compiling them one by one", e);
+				for (Class<?> type : javaFiles.keySet()) {
+					try {
+						Map<Class<?>, TwynProxyClassJavaFile> javaFile = Collections.singletonMap(type, createJavaFile(type, twynContext, t -> Optional.empty()));
+						typeImpls.putAll(Optional.ofNullable(classCache).flatMap(c -> c.load(javaFile)).orElseGet(() -> compile(javaFile)));
+					} catch (RuntimeException typeException) {
+						if (requiredTypes.contains(type)) {
+							throw typeException;
+						}
+						release(type, typeException);
+					}
+				}
+			}
+		} else {
+			typeImpls.putAll(compile(javaFiles));
+		}
+		return typeImpls;
+	}
+
+	/**
+	 * Generates the classes of the given types, each creating the proxies of the others directly. Types that are not
+	 * required and cannot be generated are released and left out.
+	 */
+	private Map<Class<?>, TwynProxyClassJavaFile> createJavaFiles(Set<Class<?>> types, Set<Class<?>> requiredTypes, TwynContext twynContext) {
+		Set<Class<?>> generatedTypes = new LinkedHashSet<>(types);
+		while (true) {
+			Map<String, String> generatedClassNames = new HashMap<>();
+			generatedTypes.forEach(type -> generatedClassNames.put(type.getCanonicalName(), TwynProxyClassJavaFile.generateClassName(ProxiedInterface.of(type))));
+			Map<Class<?>, TwynProxyClassJavaFile> javaFiles = new LinkedHashMap<>();
+			Class<?> failedType = null;
+			for (Class<?> type : generatedTypes) {
+				try {
+					javaFiles.put(type, createJavaFile(type, twynContext, name -> Optional.ofNullable(generatedClassNames.get(name))));
+				} catch (RuntimeException e) {
+					if (requiredTypes.contains(type)) {
+						throw e;
+					}
+					release(type, e);
+					failedType = type;
+					break;
+				}
+			}
+			if (failedType == null) {
+				return javaFiles;
+			}
+			generatedTypes.remove(failedType);
+		}
+	}
+
+	/**
+	 * Removes a claimed type that could not be compiled, so that it is compiled again when asked for
+	 */
+	private void release(Class<?> type, Throwable cause) {
+		CompletableFuture<BiFunction<TwynContext, Node, Object>> factory = implementations.get(type);
+		if (factory != null && !factory.isDone()) {
+			implementations.remove(type, factory);
+			factory.completeExceptionally(cause);
+		}
+	}
+
+	private Optional<Class<?>> loadPrebuiltClass(Class<?> type) {
+		Class<?> prebuiltClass = prebuiltClasses.get(type);
+		if (prebuiltClass != null) {
 			LOGGER.log(Level.INFO, "Prebuilt class found for type " + type + "! prebuiltClass=" + prebuiltClass.getName());
-			return prebuiltClass;
-		} catch (ClassNotFoundException e1) {
-			LOGGER.log(Level.FINEST, "No prebuilt class found for type " + type);
 		}
+		return Optional.ofNullable(prebuiltClass);
+	}
 
-		TwynProxyClassJavaFile twynProxyJavaFile = null;
+	/**
+	 * @return the classes generated by {@link TwynProcessor}, as listed by the indexes it registers
+	 */
+	private static Map<Class<?>, Class<?>> loadPrebuiltClasses() {
+		Map<Class<?>, Class<?>> prebuiltClasses = new HashMap<>();
 		try {
-			twynProxyJavaFile = TwynProxyClassJavaFile.create(ProxiedInterface.of(type), templates, twynContext.getIdentityMethods(), twynContext.isDebug());
-			return javaSourceCompiler
-					.compile(twynProxyJavaFile.setupCompilationUnit(javaSourceCompiler))
-					.loadClass(twynProxyJavaFile.getCanonicalClassName());
-		} catch (IllegalStateException e) {
-			throw new TwynProxyException("Could not create class for " + type.getSimpleName() + ". Source:\n" + twynProxyJavaFile != null ? twynProxyJavaFile.getCode() : "n/a", e);
-		} catch (ClassNotFoundException | IOException | URISyntaxException e) {
+			ServiceLoader.load(TwynProxyIndex.class, Thread.currentThread().getContextClassLoader())
+					.forEach(index -> prebuiltClasses.putAll(index.getProxyClasses()));
+		} catch (ServiceConfigurationError | LinkageError e) {
+			LOGGER.log(Level.WARNING, "Could not load index of prebuilt classes, classes will be generated", e);
+		}
+		return prebuiltClasses;
+	}
+
+	private TwynProxyClassJavaFile createJavaFile(Class<?> type, TwynContext twynContext, Function<String, Optional<String>> generatedClassNames) {
+		try {
+			return TwynProxyClassJavaFile.create(ProxiedInterface.of(type), templates, twynContext.getIdentityMethods(), twynContext.isDebug(), generatedClassNames);
+		} catch (IOException | URISyntaxException e) {
 			throw new TwynProxyException("Could not create class for " + type.getSimpleName() + ".", e);
 		}
 	}
 
-	private Object instantiate(Class<?> typeImpl, TwynContext twyn, Node node) {
+	private Map<Class<?>, Class<?>> compile(Map<Class<?>, TwynProxyClassJavaFile> javaFiles) {
+		Path outputDirectory = null;
 		try {
-			return typeImpl.getConstructor(TwynContext.class, Node.class).newInstance(twyn, node);
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+			outputDirectory = classCache != null ? classCache.createOutputDirectory() : null;
+			JavaSourceCompiler.CompilationUnit compilationUnit = outputDirectory != null
+					? javaSourceCompiler.createCompilationUnit(outputDirectory.toFile())
+					: javaSourceCompiler.createCompilationUnit();
+			javaFiles.values().forEach(javaFile -> javaFile.addTo(compilationUnit));
+			ClassLoader classLoader = javaSourceCompiler.compile(compilationUnit);
+
+			Map<Class<?>, Class<?>> typeImpls = new HashMap<>();
+			for (Map.Entry<Class<?>, TwynProxyClassJavaFile> javaFile : javaFiles.entrySet()) {
+				typeImpls.put(javaFile.getKey(), classLoader.loadClass(javaFile.getValue().getCanonicalClassName()));
+			}
+			if (outputDirectory != null) {
+				javaSourceCompiler.persistCompiledClasses(compilationUnit);
+				for (TwynProxyClassJavaFile javaFile : javaFiles.values()) {
+					classCache.store(javaFile, outputDirectory);
+				}
+			}
+			return typeImpls;
+		} catch (IllegalStateException e) {
+			throw new TwynProxyException("Could not create class for " + simpleNames(javaFiles) + ". Source:\n"
+					+ javaFiles.values().stream().map(TwynProxyClassJavaFile::getCode).collect(Collectors.joining("\n")), e);
+		} catch (ClassNotFoundException | IOException e) {
+			throw new TwynProxyException("Could not create class for " + simpleNames(javaFiles) + ".", e);
+		} finally {
+			if (outputDirectory != null) {
+				classCache.discard(outputDirectory);
+			}
+		}
+	}
+
+	private static String simpleNames(Map<Class<?>, TwynProxyClassJavaFile> javaFiles) {
+		return javaFiles.keySet().stream().map(Class::getSimpleName).collect(Collectors.joining(", "));
+	}
+
+	/**
+	 * Generated classes expose a static FACTORY bound to their constructor, classes generated by earlier versions
+	 * are created through a constructor handle.
+	 */
+	@SuppressWarnings("unchecked")
+	private static BiFunction<TwynContext, Node, Object> createFactory(Class<?> typeImpl) {
+		try {
+			return (BiFunction<TwynContext, Node, Object>) typeImpl.getField("FACTORY").get(null);
+		} catch (NoSuchFieldException e) {
+			return createConstructorFactory(typeImpl);
+		} catch (IllegalAccessException | ClassCastException e) {
+			throw new TwynProxyException("Could not read factory of class " + typeImpl.getSimpleName(), e);
+		}
+	}
+
+	private static BiFunction<TwynContext, Node, Object> createConstructorFactory(Class<?> typeImpl) {
+		MethodHandle constructor;
+		try {
+			constructor = MethodHandles.publicLookup()
+					.findConstructor(typeImpl, MethodType.methodType(void.class, TwynContext.class, Node.class))
+					.asType(MethodType.methodType(Object.class, TwynContext.class, Node.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
 			throw new TwynProxyException("Could not instantiate class " + typeImpl.getSimpleName(), e);
 		}
+		return (twyn, node) -> {
+			try {
+				return constructor.invokeExact(twyn, node);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new TwynProxyException("Could not instantiate class " + typeImpl.getSimpleName(), e);
+			}
+		};
+	}
+
+	@Override
+	public TwynProxyClassBuilder withClassCacheDirectory(Path directory) {
+		return new TwynProxyClassBuilder(directory);
 	}
 
 	@Override
 	public String toString() {
-		return "TwynProxyClassBuilder []";
+		return "TwynProxyClassBuilder [classCache=" + classCache + "]";
 	}
 
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ package se.jsa.twyn.internal.proxy.cg;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -40,53 +41,71 @@ class TwynProxyClassJavaFile {
 	}
 
 	public static TwynProxyClassJavaFile create(ProxiedInterface implementedInterface, TwynProxyClassJavaTemplates templates, IdentityMethods identityMethods, boolean isDebug) throws IOException, URISyntaxException {
-		NodeResolver nodeResolver = NodeResolver.getResolver(implementedInterface);
+		return create(implementedInterface, templates, identityMethods, isDebug, type -> Optional.empty());
+	}
+
+	/**
+	 * @param generatedClassNames the generated class of an interface, given its canonical name, if it is compiled
+	 * 	together with, or before, this class. Nested proxies of those interfaces are created without going through
+	 * 	the proxy builder.
+	 */
+	public static TwynProxyClassJavaFile create(ProxiedInterface implementedInterface, TwynProxyClassJavaTemplates templates, IdentityMethods identityMethods, boolean isDebug,
+			Function<String, Optional<String>> generatedClassNames) throws IOException, URISyntaxException {
+		NodePathConstants nodePaths = new NodePathConstants(implementedInterface, NodeResolver.getResolver(implementedInterface));
 		return new TwynProxyClassJavaFile(
 				generateClassName(implementedInterface),
 				templates.templateTwynProxyClass(
+						implementedInterface.getPackageName(),
 						generateSimpleClassName(implementedInterface),
 						implementedInterface,
-						buildMethods(implementedInterface, templates, nodeResolver),
+						nodePaths.getDeclarations(),
+						nodePaths.getCacheSize(),
+						buildMethods(implementedInterface, templates, nodePaths, generatedClassNames),
 						buildEqualsComparison(implementedInterface, identityMethods),
 						buildHashCodeCalls(implementedInterface, identityMethods),
 						buildToString(implementedInterface, identityMethods, isDebug)));
 	}
 
+	/**
+	 * Generated classes are placed next to their interface and named after its binary name, which is unique, so
+	 * that equally named nested interfaces of different types get different classes
+	 */
 	public static String generateSimpleClassName(ProxiedInterface implementedInterface) {
-		return implementedInterface.getSimpleName() + "TwynImpl";
+		String className = generateClassName(implementedInterface);
+		return className.substring(className.lastIndexOf('.') + 1);
 	}
 
 	public static String generateClassName(ProxiedInterface implementedInterface) {
-		return "se.jsa.twyn." + generateSimpleClassName(implementedInterface);
+		return implementedInterface.getBinaryName() + "TwynImpl";
 	}
 
-	private static String buildMethods(ProxiedInterface implementedInterface, TwynProxyClassJavaTemplates templates, NodeResolver nodeResolver) throws IOException, URISyntaxException {
-		return implementedInterface.getMethods().stream().parallel()
+	private static String buildMethods(ProxiedInterface implementedInterface, TwynProxyClassJavaTemplates templates, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) throws IOException, URISyntaxException {
+		return implementedInterface.getMethods().stream()
 			.filter(m -> !MethodType.DEFAULT.test(m))
 			.map(m -> { switch (MethodType.getType(m)) {
-				case ARRAY: 	return templates.templateArrayMethod(m, nodeResolver);
-				case LIST: 		return templates.templateListMethod(m, nodeResolver);
-				case SET:		return templates.templateSetMethod(m, nodeResolver);
-				case MAP: 		return templates.templateMapMethod(m, nodeResolver);
-				case INTERFACE: return templates.templateInterfaceMethod(m, nodeResolver);
-				case VALUE:		return templates.templateValueMethod(m, nodeResolver);
-				case SET_VALUE: return templates.templateSetValueMethod(m, implementedInterface, nodeResolver);
-				case OPTIONAL:	return templates.templateOptionalMethod(m, nodeResolver);
+				case ARRAY: 	return templates.templateArrayMethod(m, nodePaths, generatedClassNames);
+				case LIST: 		return templates.templateListMethod(m, nodePaths, generatedClassNames);
+				case SET:		return templates.templateSetMethod(m, nodePaths, generatedClassNames);
+				case MAP: 		return templates.templateMapMethod(m, nodePaths, generatedClassNames);
+				case INTERFACE: return templates.templateInterfaceMethod(m, nodePaths, generatedClassNames);
+				case VALUE:		return templates.templateValueMethod(m, nodePaths);
+				case SET_VALUE: return templates.templateSetValueMethod(m, implementedInterface, nodePaths);
+				case OPTIONAL:	return templates.templateOptionalMethod(m, nodePaths, generatedClassNames);
 				default:		throw ErrorFactory.proxyValidationError(implementedInterface, m).get();
 			} })
 			.collect(Collectors.joining("\n\n"))
 			.toString();
 	}
 
-	private static String buildEqualsComparison(ProxiedInterface implementedInterface, IdentityMethods identityMethods) {
+	static String buildEqualsComparison(ProxiedInterface implementedInterface, IdentityMethods identityMethods) {
 		return joinIdentityMethods(implementedInterface, m -> "Objects.equals(this." + m.getName() + "(), other." + m.getName() + "())", "\n\t\t\t\t&& ", identityMethods);
 	}
 
-	private static String buildHashCodeCalls(ProxiedInterface implementedInterface, IdentityMethods identityMethods) {
+	static String buildHashCodeCalls(ProxiedInterface implementedInterface, IdentityMethods identityMethods) {
 		return joinIdentityMethods(implementedInterface, m -> (MethodType.ARRAY.test(m) ? "(Object)" : "") + m.getName() + "()", ", ", identityMethods);
 	}
 
-	private static String buildToString(ProxiedInterface implementedInterface, IdentityMethods identityMethods, boolean isDebug) {
+	static String buildToString(ProxiedInterface implementedInterface, IdentityMethods identityMethods, boolean isDebug) {
 		return joinIdentityMethods(implementedInterface, m -> m.getName() + "()=\" + " + m.getName() + "() + \"", ", ", identityMethods)
 				+ (isDebug ? ", node=\" + node + \"" : "");
 	}
@@ -97,10 +116,8 @@ class TwynProxyClassJavaFile {
 				.reduce(null, (s1, s2) -> s1 == null ? s2 : (s2 == null ? s1 : s1 + separator + s2));
 	}
 
-	public JavaSourceCompiler.CompilationUnit setupCompilationUnit(JavaSourceCompiler javaSourceCompiler) {
-		JavaSourceCompiler.CompilationUnit compilationUnit = javaSourceCompiler.createCompilationUnit();
+	public void addTo(JavaSourceCompiler.CompilationUnit compilationUnit) {
 		compilationUnit.addJavaSource(getCanonicalClassName(), code);
-		return compilationUnit;
 	}
 
 	public String getCanonicalClassName() {
@@ -16,20 +16,26 @@
 package se.jsa.twyn.internal.proxy.cg;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import se.jsa.twyn.internal.readmodel.ImplementedMethod;
 import se.jsa.twyn.internal.readmodel.ProxiedInterface;
-import se.jsa.twyn.internal.proxy.common.NodeResolver;
 
 class TwynProxyClassJavaTemplates {
 
 	private final String twynProxyClassTemplate;
 	private final String twynInterfaceMethodTemplate;
 	private final String twynValueMethodTemplate;
+	private final String twynScalarMethodTemplate;
 	private final String twynArrayMethodTemplate;
 	private final String twynListMethodTemplate;
 	private final String twynMapMethodTemplate;
@@ -38,11 +44,14 @@ class TwynProxyClassJavaTemplates {
 	private final String twynSetValueMethodTemplate;
 	private final String twynOptionalMethodTemplate;
 	private final String twynOptionalInterfaceMethodTemplate;
+	private final String twynProxyIndexTemplate;
+	private final String twynStreamedClassTemplate;
 
 	public TwynProxyClassJavaTemplates(
 			String twynProxyClassTemplate,
 			String twynInterfaceMethodTemplate,
 			String twynValueMethodTemplate,
+			String twynScalarMethodTemplate,
 			String twynArrayMethodTemplate,
 			String twynListMethodTemplate,
 			String twynSetMethodTemplate,
@@ -50,10 +59,13 @@ class TwynProxyClassJavaTemplates {
 			String twynSetValueMethodTemplate,
 			String twynMapMethodTypedKeyTemplate,
 			String twynOptionalMethodTemplate,
-			String twynOptionalInterfaceMethodTemplate) {
+			String twynOptionalInterfaceMethodTemplate,
+			String twynProxyIndexTemplate,
+			String twynStreamedClassTemplate) {
 		this.twynProxyClassTemplate = Objects.requireNonNull(twynProxyClassTemplate);
 		this.twynInterfaceMethodTemplate = Objects.requireNonNull(twynInterfaceMethodTemplate);
 		this.twynValueMethodTemplate = Objects.requireNonNull(twynValueMethodTemplate);
+		this.twynScalarMethodTemplate = Objects.requireNonNull(twynScalarMethodTemplate);
 		this.twynArrayMethodTemplate = Objects.requireNonNull(twynArrayMethodTemplate);
 		this.twynListMethodTemplate = Objects.requireNonNull(twynListMethodTemplate);
 		this.twynSetMethodTemplate = Objects.requireNonNull(twynSetMethodTemplate);
@@ -62,6 +74,8 @@ class TwynProxyClassJavaTemplates {
 		this.twynMapMethodTypedKeyTemplate = Objects.requireNonNull(twynMapMethodTypedKeyTemplate);
 		this.twynOptionalMethodTemplate = Objects.requireNonNull(twynOptionalMethodTemplate);
 		this.twynOptionalInterfaceMethodTemplate = Objects.requireNonNull(twynOptionalInterfaceMethodTemplate);
+		this.twynProxyIndexTemplate = Objects.requireNonNull(twynProxyIndexTemplate);
+		this.twynStreamedClassTemplate = Objects.requireNonNull(twynStreamedClassTemplate);
 	}
 
 	public interface Reader {
@@ -69,7 +83,14 @@ class TwynProxyClassJavaTemplates {
 	}
 
 	public static TwynProxyClassJavaTemplates create() throws IOException, URISyntaxException {
-		return create(s -> new String(Files.readAllBytes(Paths.get(TwynProxyClassJavaFile.class.getResource("/" + s).toURI()))));
+		return create(s -> {
+			try (InputStream template = TwynProxyClassJavaFile.class.getResourceAsStream("/" + s)) {
+				if (template == null) {
+					throw new IOException("Could not find template " + s);
+				}
+				return new String(template.readAllBytes(), StandardCharsets.UTF_8);
+			}
+		});
 	}
 
 	public static TwynProxyClassJavaTemplates create(Reader reader) throws IOException, URISyntaxException {
@@ -77,6 +98,7 @@ class TwynProxyClassJavaTemplates {
 				reader.read("TwynProxyClass.java.template"),
 				reader.read("TwynProxyClass_interfaceMethod.java.template"),
 				reader.read("TwynProxyClass_valueMethod.java.template"),
+				reader.read("TwynProxyClass_scalarMethod.java.template"),
 				reader.read("TwynProxyClass_arrayMethod.java.template"),
 				reader.read("TwynProxyClass_listMethod.java.template"),
 				reader.read("TwynProxyClass_setMethod.java.template"),
@@ -84,14 +106,19 @@ class TwynProxyClassJavaTemplates {
 				reader.read("TwynProxyClass_setValueMethod.java.template"),
 				reader.read("TwynProxyClass_mapMethodTyped.java.template"),
 				reader.read("TwynProxyClass_optionalMethod.java.template"),
-				reader.read("TwynProxyClass_optionalInterfaceMethod.java.template")
+				reader.read("TwynProxyClass_optionalInterfaceMethod.java.template"),
+				reader.read("TwynProxyIndex.java.template"),
+				reader.read("TwynStreamedClass.java.template")
 				);
 	}
 
-	public String templateTwynProxyClass(String className, ProxiedInterface implementedInterface, String methodBodies, String equalsComparison, String hashCodeCalls, String toString) {
+	public String templateTwynProxyClass(String packageName, String className, ProxiedInterface implementedInterface, String nodePathDeclarations, int cacheSize, String methodBodies, String equalsComparison, String hashCodeCalls, String toString) {
 		return twynProxyClassTemplate
+				.replace("PACKAGE_DECLARATION", packageName.isEmpty() ? "" : "package " + packageName + ";")
 				.replace("CLASS_NAME", className)
-				.replace("TARGET_INTERFACE_QUALIFIED", implementedInterface.getCanonicalName())
+				.replace("NODE_PATHS", nodePathDeclarations)
+				.replace("CACHE_SIZE", Integer.toString(cacheSize))
+				.replace("TARGET_INTERFACE_IMPORT", implementedInterface.getPackageName().isEmpty() ? "" : "import " + implementedInterface.getCanonicalName() + ";")
 				.replace("TARGET_INTERFACE", implementedInterface.getSimpleName())
 				.replace("IMPLEMENTED_METHODS", methodBodies)
 				.replace("EQUALS_COMPARISON", equalsComparison)
@@ -99,98 +126,217 @@ class TwynProxyClassJavaTemplates {
 				.replace("TOSTRING", toString);
 	}
 
-	public String templateInterfaceMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	/**
+	 * @param proxyClasses names of generated classes by the canonical name of the interface they implement
+	 * @param streamedClasses names of generated streaming classes by the canonical name of the interface they read
+	 */
+	public String templateTwynProxyIndex(String packageName, String className, Map<String, String> proxyClasses, Map<String, String> streamedClasses) {
+		return twynProxyIndexTemplate
+				.replace("PACKAGE_DECLARATION", packageName.isEmpty() ? "" : "package " + packageName + ";")
+				.replace("CLASS_NAME", className)
+				.replace("PROXY_CLASSES", proxyClasses.entrySet().stream()
+						.map(e -> "\t\tproxyClasses.put(" + e.getKey() + ".class, " + e.getValue() + ".class);")
+						.collect(Collectors.joining("\n")))
+				.replace("STREAM_READERS", streamedClasses.entrySet().stream()
+						.map(e -> "\t\tstreamReaders.put(" + e.getKey() + ".class, " + e.getValue() + "::read);")
+						.collect(Collectors.joining("\n")));
+	}
+
+	public String templateTwynStreamedClass(String packageName, String className, ProxiedInterface implementedInterface,
+			String fields, String parameters, String assignments, String locals, String cases, String arguments, String getters,
+			String fieldComparison, String equalsComparison, String hashCodeCalls, String toString) {
+		return twynStreamedClassTemplate
+				.replace("PACKAGE_DECLARATION", packageName.isEmpty() ? "" : "package " + packageName + ";")
+				.replace("CLASS_NAME", className)
+				.replace("TARGET_INTERFACE_IMPORT", packageName.isEmpty() ? "" : "import " + implementedInterface.getCanonicalName() + ";")
+				.replace("TARGET_INTERFACE", implementedInterface.getSimpleName())
+				.replace("FIELDS", fields)
+				.replace("PARAMETERS", parameters)
+				.replace("ASSIGNMENTS", assignments)
+				.replace("LOCALS", locals)
+				.replace("CASES", cases)
+				.replace("ARGUMENTS", arguments)
+				.replace("GETTERS", getters)
+				.replace("FIELD_COMPARISON", fieldComparison)
+				.replace("EQUALS_COMPARISON", equalsComparison)
+				.replace("HASHCODE_CALLS", hashCodeCalls)
+				.replace("TOSTRING", toString);
+	}
+
+	public String templateInterfaceMethod(ImplementedMethod method, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) {
 		return twynInterfaceMethodTemplate
+				.replace("NEW_PROXY", newProxy(method.getReturnTypeCanonicalName(), "node", generatedClassNames))
 				.replace("RETURN_TYPE", method.getReturnTypeCanonicalName())
 				.replace("METHOD_NAME", method.getName())
-				.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 				.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName());
 	}
 
-	public String templateValueMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateValueMethod(ImplementedMethod method, NodePathConstants nodePaths) {
+		return ScalarType.of(method)
+				.map(scalarType -> templateScalarMethod(method, nodePaths, scalarType))
+				.orElseGet(() -> templateMappedValueMethod(method, nodePaths));
+	}
+
+	private String templateScalarMethod(ImplementedMethod method, NodePathConstants nodePaths, ScalarType scalarType) {
+		return twynScalarMethodTemplate
+				.replace("RETURN_TYPE", method.getReturnTypeCanonicalName())
+				.replace("METHOD_NAME", method.getName())
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
+				.replace("MISSING_VALUE", scalarType.type.isPrimitive()
+						? "throw new NullPointerException(\"No value for primitive property " + method.getDeclaringClassSimpleName() + "." + method.getName() + "\");"
+						: "return null;")
+				.replace("READ_VALUE", scalarType.readValue);
+	}
+
+	private String templateMappedValueMethod(ImplementedMethod method, NodePathConstants nodePaths) {
 		return twynValueMethodTemplate
 				.replace("RETURN_TYPE", method.getReturnTypeCanonicalName())
 				.replace("METHOD_NAME", method.getName())
-				.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 				.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName())
 				.replace("NULL_RETURN", method.returnsArray() ? "new " + method.getReturnComponentTypeCanonicalName() + "[0]" : "null");
 	}
 
-	public String templateOptionalMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateOptionalMethod(ImplementedMethod method, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) {
 		return method.getReturnTypeParameterType(0).isInterface()
-				? templateOptionalInterfaceMethod(method, nodeResolver)
-				: templateOptionalValueMethod(method, nodeResolver);
+				? templateOptionalInterfaceMethod(method, nodePaths, generatedClassNames)
+				: templateOptionalValueMethod(method, nodePaths);
 	}
 
-	public String templateOptionalInterfaceMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateOptionalInterfaceMethod(ImplementedMethod method, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) {
 		return twynOptionalInterfaceMethodTemplate
+				.replace("NEW_PROXY", newProxy(method.getReturnTypeParameterTypeCanonicalName(0).replace("$", "."), "node", generatedClassNames))
 				.replace("RETURN_TYPE", method.getReturnTypeParameterTypeCanonicalName(0).replace("$", "."))
 				.replace("METHOD_NAME", method.getName())
-				.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 				.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName());
 	}
 
-	public String templateOptionalValueMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateOptionalValueMethod(ImplementedMethod method, NodePathConstants nodePaths) {
 		return twynOptionalMethodTemplate
 				.replace("RETURN_TYPE", method.getReturnTypeParameterTypeCanonicalName(0).replace("$", "."))
 				.replace("METHOD_NAME", method.getName())
-				.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 				.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName());
 	}
 
-	public String templateArrayMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateArrayMethod(ImplementedMethod method, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) {
 		return twynArrayMethodTemplate
+				.replace("ELEMENT_READER", elementReader(method.getReturnComponentTypeCanonicalName(), generatedClassNames))
 				.replace("RETURN_TYPE", method.getReturnTypeCanonicalName())
 				.replace("COMPONENT_TYPE", method.getReturnComponentTypeCanonicalName())
 				.replace("METHOD_NAME", method.getName())
-				.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 				.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName());
 	}
 
-	public String templateListMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateListMethod(ImplementedMethod method, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) {
 		return twynListMethodTemplate
+				.replace("ELEMENT_READER", elementReader(method.getReturnTypeParameterTypeCanonicalName(0).replace("$", "."), generatedClassNames))
 				.replace("COMPONENT_TYPE", method.getReturnTypeParameterTypeCanonicalName(0).replace("$", "."))
 				.replace("METHOD_NAME", method.getName())
-				.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 				.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName());
 	}
 
-	public String templateSetMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateSetMethod(ImplementedMethod method, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) {
 		return twynSetMethodTemplate
+				.replace("ELEMENT_READER", elementReader(method.getReturnTypeParameterTypeCanonicalName(0).replace("$", "."), generatedClassNames))
 				.replace("COMPONENT_TYPE", method.getReturnTypeParameterTypeCanonicalName(0).replace("$", "."))
 				.replace("METHOD_NAME", method.getName())
-				.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 				.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName());
 	}
 
-	public String templateMapMethod(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateMapMethod(ImplementedMethod method, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) {
 		if (!method.getReturnTypeParameterTypeCanonicalName(0).replace("$", ".").equals(String.class.getCanonicalName())) {
-			return templateMapMethodTyped(method, nodeResolver);
+			return templateMapMethodTyped(method, nodePaths, generatedClassNames);
 		} else {
 			return twynMapMethodTemplate
+					.replace("NEW_PROXY", newProxy(method.getReturnTypeParameterTypeCanonicalName(1).replace("$", "."), "entry.getValue()", generatedClassNames))
 					.replace("COMPONENT_TYPE", method.getReturnTypeParameterTypeCanonicalName(1).replace("$", "."))
 					.replace("METHOD_NAME", method.getName())
-					.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+					.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 					.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName());
 		}
 	}
 
-	public String templateMapMethodTyped(ImplementedMethod method, NodeResolver nodeResolver) {
+	public String templateMapMethodTyped(ImplementedMethod method, NodePathConstants nodePaths, Function<String, Optional<String>> generatedClassNames) {
 		return twynMapMethodTypedKeyTemplate
+				.replace("NEW_PROXY", newProxy(method.getReturnTypeParameterTypeCanonicalName(1).replace("$", "."), "entry.getValue()", generatedClassNames))
 				.replace("COMPONENT_TYPE", method.getReturnTypeParameterTypeCanonicalName(1).replace("$", "."))
 				.replace("METHOD_NAME", method.getName())
-				.replace("FIELD_ID", nodeResolver.resolveNodeId(method))
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_KEY", nodePaths.getCacheKey(method))
 				.replace("KEY_TYPE", method.getReturnTypeParameterTypeCanonicalName(0).replace("$", "."))
 				.replace("DECLARING_CLASS", method.getDeclaringClassSimpleName());
 	}
 
-	public String templateSetValueMethod(ImplementedMethod method, ProxiedInterface implementedType, NodeResolver nodeResolver) {
+	/**
+	 * Nested proxies with a generated class compiled together with this one are created directly, others through the
+	 * proxy builder of the context
+	 */
+	private static String newProxy(String type, String node, Function<String, Optional<String>> generatedClassNames) {
+		return generatedClassNames.apply(type)
+				.map(generatedClass -> "new " + generatedClass + "(twyn, " + node + ")")
+				.orElseGet(() -> "twyn.proxy(" + node + ", " + type + ".class)");
+	}
+
+	/**
+	 * @return a component type for collect(...) to resolve at runtime, or a function creating the generated class
+	 */
+	private static String elementReader(String type, Function<String, Optional<String>> generatedClassNames) {
+		return generatedClassNames.apply(type)
+				.map(generatedClass -> "n -> new " + generatedClass + "(twyn, n)")
+				.orElseGet(() -> type + ".class");
+	}
+
+	public String templateSetValueMethod(ImplementedMethod method, ProxiedInterface implementedType, NodePathConstants nodePaths) {
 		return twynSetValueMethodTemplate
 				.replace("VALUE_TYPE", method.getParameterTypeCanonicalName(0))
 				.replace("METHOD_NAME", method.getName())
 				.replace("RETURN_TYPE", method.returns(implementedType) ? implementedType.getCanonicalName() : "void")
 				.replace("RETURN", method.returns(implementedType) ? "return this;" : "")
-				.replace("FIELD_ID", nodeResolver.resolveSetNodeId(method));
+				.replace("FIELD_ID", nodePaths.getConstantName(method))
+				.replace("CACHE_CLEARS", nodePaths.getCacheClears(method));
+	}
+
+	/**
+	 * Value types that are read straight from the node, without a mapping round trip or, for primitives, boxing
+	 */
+	private enum ScalarType {
+		INT(int.class, "twyn.readInt(node)"),
+		LONG(long.class, "twyn.readLong(node)"),
+		DOUBLE(double.class, "twyn.readDouble(node)"),
+		BOOLEAN(boolean.class, "twyn.readBoolean(node)"),
+		INTEGER_OBJECT(Integer.class, "twyn.readScalar(node, java.lang.Integer.class)"),
+		LONG_OBJECT(Long.class, "twyn.readScalar(node, java.lang.Long.class)"),
+		DOUBLE_OBJECT(Double.class, "twyn.readScalar(node, java.lang.Double.class)"),
+		BOOLEAN_OBJECT(Boolean.class, "twyn.readScalar(node, java.lang.Boolean.class)"),
+		STRING(String.class, "twyn.readScalar(node, java.lang.String.class)"),
+		BIG_DECIMAL(BigDecimal.class, "twyn.readScalar(node, java.math.BigDecimal.class)");
+
+		private final Class<?> type;
+		private final String readValue;
+
+		private ScalarType(Class<?> type, String readValue) {
+			this.type = type;
+			this.readValue = readValue;
+		}
+
+		static Optional<ScalarType> of(ImplementedMethod method) {
+			return Stream.of(values()).filter(t -> method.returns(t.type)).findFirst();
+		}
 	}
 
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.cg;
+
+import java.util.Collections;
+import java.util.Map;
+
+import se.jsa.twyn.internal.proxy.stream.TwynStreamReader;
+
+/**
+ * Index of the proxy classes generated by {@link TwynProcessor} in one compilation, registered as a service in
+ * META-INF/services so that prebuilt classes are found without probing the class path for them.
+ */
+public interface TwynProxyIndex {
+	/**
+	 * @return generated proxy classes by the interface they implement
+	 */
+	Map<Class<?>, Class<?>> getProxyClasses();
+
+	/**
+	 * @return generated streaming readers by the interface they read, for types annotated with
+	 * 	@TwynProxy(streaming = true)
+	 */
+	default Map<Class<?>, TwynStreamReader<?>> getStreamReaders() {
+		return Collections.emptyMap();
+	}
+}
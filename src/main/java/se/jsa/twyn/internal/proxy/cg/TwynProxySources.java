@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.cg;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import se.jsa.twyn.internal.IdentityMethods;
+import se.jsa.twyn.internal.proxy.common.ReachableInterfaces;
+import se.jsa.twyn.internal.readmodel.ProxiedInterface;
+
+/**
+ * The proxy sources of a closed set of interfaces and the index that registers them, generated ahead of time for
+ * interfaces that cannot be annotated with @TwynProxy, such as those of third-party jars.
+ */
+public class TwynProxySources {
+	public static final String SERVICE_FILE = "META-INF/services/" + TwynProxyIndex.class.getName();
+
+	private final Map<String, String> sources;
+	private final String indexClassName;
+
+	private TwynProxySources(Map<String, String> sources, String indexClassName) {
+		this.sources = Collections.unmodifiableMap(sources);
+		this.indexClassName = indexClassName;
+	}
+
+	/**
+	 * Generates proxies for the given interfaces and every interface reachable from them.
+	 */
+	public static TwynProxySources generate(Collection<? extends Class<?>> roots) throws IOException, URISyntaxException {
+		TwynProxyClassJavaTemplates templates = TwynProxyClassJavaTemplates.create();
+		Set<Class<?>> types = ReachableInterfaces.of(roots);
+		Map<String, String> proxyClasses = new TreeMap<>();
+		types.forEach(type -> proxyClasses.put(type.getCanonicalName(), TwynProxyClassJavaFile.generateClassName(ProxiedInterface.of(type))));
+		Map<String, String> sources = new TreeMap<>();
+		String packageName = null;
+		for (Class<?> type : types) {
+			ProxiedInterface proxiedInterface = ProxiedInterface.of(type);
+			TwynProxyClassJavaFile javaFile = TwynProxyClassJavaFile.create(proxiedInterface, templates, new IdentityMethods(), false,
+					name -> Optional.ofNullable(proxyClasses.get(name)));
+			sources.put(javaFile.getCanonicalClassName(), javaFile.getCode());
+			packageName = packageName == null ? proxiedInterface.getPackageName() : packageName;
+		}
+		if (packageName == null) {
+			throw new IllegalArgumentException("No interfaces to generate proxies for in " + roots);
+		}
+		String simpleName = indexSimpleName(proxyClasses);
+		String indexClassName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		sources.put(indexClassName, templates.templateTwynProxyIndex(packageName, simpleName, proxyClasses, Collections.emptyMap()));
+		return new TwynProxySources(sources, indexClassName);
+	}
+
+	/**
+	 * Indexes are named after the interfaces they cover so that indexes from different compilations do not collide.
+	 */
+	static String indexSimpleName(Map<String, String> proxyClasses) {
+		return "TwynProxyIndex_" + UUID.nameUUIDFromBytes(proxyClasses.toString().getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+	}
+
+	/**
+	 * @return java source code by the binary name of the class it declares
+	 */
+	public Map<String, String> getSources() {
+		return sources;
+	}
+
+	/**
+	 * @return the index class to list in {@link #SERVICE_FILE}
+	 */
+	public String getIndexClassName() {
+		return indexClassName;
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.cg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import se.jsa.twyn.internal.IdentityMethods;
+import se.jsa.twyn.internal.MethodType;
+import se.jsa.twyn.internal.proxy.common.NodeResolver;
+import se.jsa.twyn.internal.proxy.common.TwynUtil;
+import se.jsa.twyn.internal.readmodel.ImplementedMethod;
+import se.jsa.twyn.internal.readmodel.ProxiedInterface;
+
+/**
+ * Generates an immutable implementation of an interface that is read straight from json tokens, with a static
+ * read(JsonParser) method that materializes every property and skips unknown fields without reading them into nodes.
+ */
+class TwynStreamedClassJavaFile {
+
+	private TwynStreamedClassJavaFile() {
+	}
+
+	/**
+	 * @param streamedClassNames the generated streaming class of a type, given its canonical name, or empty if the
+	 * 	type is not an interface. Fails for interfaces that are not read by streaming.
+	 */
+	public static TwynProxyClassJavaFile create(ProxiedInterface implementedInterface, TwynProxyClassJavaTemplates templates, IdentityMethods identityMethods, Function<String, Optional<String>> streamedClassNames) {
+		NodeResolver nodeResolver = NodeResolver.getResolver(implementedInterface);
+		List<Property> properties = new ArrayList<>();
+		Map<String, Property> methodProperties = new HashMap<>();
+		Set<String> fieldNames = new HashSet<>();
+		for (ImplementedMethod method : implementedInterface.getMethods()) {
+			if (MethodType.DEFAULT.test(method)) {
+				continue;
+			}
+			Property property = Property.of(implementedInterface, method, properties.size(), nodeResolver, streamedClassNames);
+			if (!fieldNames.add(property.fieldName)) {
+				throw new IllegalArgumentException("Field " + property.fieldName + " of " + implementedInterface.getCanonicalName() + " is read by more than one method, which is not supported by streaming");
+			}
+			properties.add(property);
+			methodProperties.put(method.getName(), property);
+		}
+		List<Property> identityProperties = identityMethods.getIdentityMethods(implementedInterface)
+				.map(m -> methodProperties.get(m.getName()))
+				.collect(Collectors.toList());
+		String className = generateClassName(implementedInterface);
+		return new TwynProxyClassJavaFile(
+				className,
+				templates.templateTwynStreamedClass(
+						implementedInterface.getPackageName(),
+						className.substring(className.lastIndexOf('.') + 1),
+						implementedInterface,
+						join(properties, p -> "\tprivate final " + p.type + " " + p.variable + ";", "\n"),
+						join(properties, p -> p.type + " " + p.variable, ", "),
+						join(properties, p -> "\t\tthis." + p.variable + " = " + p.variable + ";", "\n"),
+						join(properties, p -> "\t\t" + p.type + " " + p.variable + " = " + p.missingValue + ";", "\n"),
+						join(properties, p -> "\t\t\t\tcase " + TwynUtil.toJavaStringLiteral(p.fieldName) + ":\n"
+								+ "\t\t\t\t\t" + p.variable + " = " + p.readValue + ";\n"
+								+ "\t\t\t\t\tbreak;", "\n"),
+						join(properties, p -> p.variable, ", "),
+						join(properties, p -> "\t@Override\n"
+								+ "\tpublic " + p.returnType + " " + p.method.getName() + "() {\n"
+								+ "\t\treturn " + p.variable + ";\n"
+								+ "\t}", "\n\n"),
+						joinOrTrue(identityProperties, p -> "Objects.equals(this." + p.variable + ", other." + p.variable + ")"),
+						joinOrTrue(identityProperties, p -> "Objects.equals(this." + p.variable + ", other." + p.method.getName() + "())"),
+						join(identityProperties, p -> (p.type.endsWith("[]") ? "(Object) " : "") + p.variable, ", "),
+						join(identityProperties, p -> p.method.getName() + "()=\" + " + p.variable + " + \"", ", ")));
+	}
+
+	public static String generateClassName(ProxiedInterface implementedInterface) {
+		return implementedInterface.getBinaryName() + "TwynValue";
+	}
+
+	private static String join(List<Property> properties, Function<Property, String> fn, String separator) {
+		return properties.stream().map(fn).collect(Collectors.joining(separator));
+	}
+
+	private static String joinOrTrue(List<Property> properties, Function<Property, String> fn) {
+		return properties.isEmpty() ? "true" : join(properties, fn, "\n\t\t\t\t&& ");
+	}
+
+	private static class Property {
+		private final ImplementedMethod method;
+		private final String fieldName;
+		private final String variable;
+		private final String type;
+		private final String returnType;
+		private final String missingValue;
+		private final String readValue;
+
+		private Property(ImplementedMethod method, String fieldName, String variable, String type, String missingValue, String readValue) {
+			this(method, fieldName, variable, type, type, missingValue, readValue);
+		}
+
+		private Property(ImplementedMethod method, String fieldName, String variable, String type, String returnType, String missingValue, String readValue) {
+			this.method = method;
+			this.fieldName = fieldName;
+			this.variable = variable;
+			this.type = type;
+			this.returnType = returnType;
+			this.missingValue = missingValue;
+			this.readValue = readValue;
+		}
+
+		static Property of(ProxiedInterface implementedInterface, ImplementedMethod method, int index, NodeResolver nodeResolver, Function<String, Optional<String>> streamedClassNames) {
+			String fieldName = nodeResolver.getPath(method).getFieldName()
+					.orElseThrow(() -> unsupported(implementedInterface, method, "only methods reading a single field"));
+			String variable = "value" + index;
+			switch (MethodType.getType(method)) {
+				case INTERFACE: {
+					String type = method.getReturnTypeCanonicalName();
+					return new Property(method, fieldName, variable, type, "null", streamedClass(type, streamedClassNames) + ".read(parser)");
+				}
+				case ARRAY: {
+					String componentType = method.getReturnComponentTypeCanonicalName();
+					return new Property(method, fieldName, variable, componentType + "[]", "new " + componentType + "[0]",
+							"StreamValues.readList(parser, " + streamedClass(componentType, streamedClassNames) + "::read).toArray(new " + componentType + "[0])");
+				}
+				case LIST: {
+					String elementType = method.getReturnTypeParameterTypeCanonicalName(0);
+					return new Property(method, fieldName, variable, "java.util.List<" + elementType + ">", "Collections.emptyList()",
+							"StreamValues.readList(parser, " + elementReader(elementType, streamedClassNames) + ")");
+				}
+				case SET: {
+					String elementType = method.getReturnTypeParameterTypeCanonicalName(0);
+					return new Property(method, fieldName, variable, "java.util.Set<" + elementType + ">", "Collections.emptySet()",
+							"StreamValues.readSet(parser, " + elementReader(elementType, streamedClassNames) + ")");
+				}
+				case MAP: {
+					String keyType = method.getReturnTypeParameterTypeCanonicalName(0);
+					String valueType = method.getReturnTypeParameterTypeCanonicalName(1);
+					String type = "java.util.Map<" + keyType + ", " + valueType + ">";
+					if (keyType.equals(String.class.getName())) {
+						return new Property(method, fieldName, variable, type, "Collections.emptyMap()",
+								"StreamValues.readMap(parser, " + elementReader(valueType, streamedClassNames) + ")");
+					} else if (!streamedClassNames.apply(valueType).isPresent()) {
+						return new Property(method, fieldName, variable, type, "Collections.emptyMap()",
+								"Objects.requireNonNullElse(StreamValues.readValue(parser, new TypeReference<" + type + ">() {}), Collections.emptyMap())");
+					}
+					throw unsupported(implementedInterface, method, "maps of interfaces only with String keys");
+				}
+				case OPTIONAL: {
+					String valueType = method.getReturnTypeParameterTypeCanonicalName(0);
+					return new Property(method, fieldName, variable, "Optional<" + valueType + ">", "Optional.empty()",
+							"Optional.ofNullable(" + streamedClassNames.apply(valueType)
+									.map(streamedClass -> streamedClass + ".read(parser)")
+									.orElseGet(() -> readValue(valueType, "parser")) + ")");
+				}
+				case VALUE: {
+					String type = method.returnsArray() ? method.getReturnComponentTypeCanonicalName() + "[]" : method.getReturnTypeCanonicalName();
+					return new Property(method, fieldName, variable, fieldType(type), type, "null", readValue(type, "parser"));
+				}
+				default:
+					throw unsupported(implementedInterface, method, "only getters of values, interfaces and collections");
+			}
+		}
+
+		private static String streamedClass(String type, Function<String, Optional<String>> streamedClassNames) {
+			return streamedClassNames.apply(type).orElseThrow(() -> new IllegalArgumentException(type + " is not an interface"));
+		}
+
+		/**
+		 * @return an expression of a TwynStreamReader for the given type
+		 */
+		private static String elementReader(String type, Function<String, Optional<String>> streamedClassNames) {
+			return streamedClassNames.apply(type)
+					.map(streamedClass -> streamedClass + "::read")
+					.orElseGet(() -> "(JsonParser p) -> " + readValue(type, "p"));
+		}
+
+		/**
+		 * @return the boxed type of primitives, a missing primitive then fails with a NullPointerException when read
+		 * 	just as it does on the other kinds of proxies
+		 */
+		private static String fieldType(String type) {
+			switch (type) {
+				case "boolean":	return "Boolean";
+				case "char":	return "Character";
+				case "byte":	return "Byte";
+				case "short":	return "Short";
+				case "int":		return "Integer";
+				case "long":	return "Long";
+				case "float":	return "Float";
+				case "double":	return "Double";
+				default:		return type;
+			}
+		}
+
+		private static String readValue(String type, String parser) {
+			switch (type) {
+				case "int":						return "StreamValues.readInt(" + parser + ")";
+				case "long":					return "StreamValues.readLong(" + parser + ")";
+				case "double":					return "StreamValues.readDouble(" + parser + ")";
+				case "boolean":					return "StreamValues.readBoolean(" + parser + ")";
+				case "java.lang.Integer":		return "StreamValues.readInteger(" + parser + ")";
+				case "java.lang.Long":			return "StreamValues.readLongObject(" + parser + ")";
+				case "java.lang.Double":		return "StreamValues.readDoubleObject(" + parser + ")";
+				case "java.lang.Boolean":		return "StreamValues.readBooleanObject(" + parser + ")";
+				case "java.lang.String":		return "StreamValues.readString(" + parser + ")";
+				case "java.math.BigDecimal":	return "StreamValues.readBigDecimal(" + parser + ")";
+				case "byte":
+				case "short":
+				case "char":
+				case "float":					return parser + ".readValueAs(" + type + ".class)";
+				default:						return "StreamValues.readValue(" + parser + ", new TypeReference<" + type + ">() {})";
+			}
+		}
+
+		private static IllegalArgumentException unsupported(ProxiedInterface implementedInterface, ImplementedMethod method, String supported) {
+			return new IllegalArgumentException("Method " + method.getName() + " of " + implementedInterface.getCanonicalName()
+					+ " cannot be read by streaming, which supports " + supported);
+		}
+	}
+}
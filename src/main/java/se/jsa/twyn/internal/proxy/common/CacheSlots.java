@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import se.jsa.twyn.internal.MethodType;
+import se.jsa.twyn.internal.readmodel.ImplementedMethod;
+import se.jsa.twyn.internal.readmodel.ProxiedInterface;
+
+/**
+ * Assigns every getter of a proxied interface an ordinal, used as the index of the cached value in the per-proxy
+ * {@link se.jsa.twyn.internal.Cache}. Getters reading the same node get slots of their own, since they may map it
+ * to different types, and a setter clears the slots of every getter reading the node it writes.
+ */
+public class CacheSlots {
+	private static final int[] NO_SLOTS = new int[0];
+
+	private final NodeResolver nodeResolver;
+	private final Map<String, Integer> slots = new HashMap<>();
+	private final Map<NodePath, List<Integer>> slotsByNodePath = new HashMap<>();
+
+	private CacheSlots(ProxiedInterface proxiedInterface, NodeResolver nodeResolver) {
+		this.nodeResolver = nodeResolver;
+		for (ImplementedMethod method : proxiedInterface.getMethods()) {
+			if (hasNodePath(method) && !MethodType.SET_VALUE.test(method) && !slots.containsKey(method.getName())) {
+				int slot = slots.size();
+				slots.put(method.getName(), slot);
+				slotsByNodePath.computeIfAbsent(getNodePath(method), path -> new ArrayList<>()).add(slot);
+			}
+		}
+	}
+
+	public static CacheSlots create(ProxiedInterface proxiedInterface, NodeResolver nodeResolver) {
+		return new CacheSlots(proxiedInterface, nodeResolver);
+	}
+
+	/**
+	 * @return the slot caching the value of the given getter
+	 */
+	public int getSlot(ImplementedMethod method) {
+		Integer slot = MethodType.SET_VALUE.test(method) ? null : slots.get(method.getName());
+		if (slot == null) {
+			throw new IllegalArgumentException("No cache slot assigned to " + method);
+		}
+		return slot;
+	}
+
+	/**
+	 * @return the slots of all getters reading the node the given setter writes
+	 */
+	public int[] getClearedSlots(ImplementedMethod method) {
+		List<Integer> cleared = slotsByNodePath.get(getNodePath(method));
+		return cleared == null ? NO_SLOTS : cleared.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	public NodePath getNodePath(ImplementedMethod method) {
+		return MethodType.SET_VALUE.test(method) ? nodeResolver.getSetPath(method) : nodeResolver.getPath(method);
+	}
+
+	public int size() {
+		return slots.size();
+	}
+
+	public static boolean hasNodePath(ImplementedMethod method) {
+		switch (MethodType.getType(method)) {
+			case ARRAY:
+			case LIST:
+			case SET:
+			case MAP:
+			case INTERFACE:
+			case VALUE:
+			case OPTIONAL:
+			case SET_VALUE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CacheSlots " + slots;
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import se.jsa.twyn.internal.datamodel.CollectionNode;
+import se.jsa.twyn.internal.datamodel.ContainerNode;
+import se.jsa.twyn.internal.datamodel.Node;
+
+/**
+ * A precompiled location of a node relative to the node of a proxy: either a chain of field names, as given by a
+ * method name or a @Resolve("a.b.c") path, or an index into an array node. Paths are immutable and are walked
+ * without allocating.
+ */
+public abstract class NodePath {
+
+	private NodePath() {
+	}
+
+	public static NodePath parse(String path) {
+		return fields(path.split("\\."));
+	}
+
+	public static NodePath fields(String... fieldNames) {
+		return new Fields(fieldNames);
+	}
+
+	public static NodePath index(int index) {
+		return new Index(index);
+	}
+
+	/**
+	 * @return the resolved node or null if it, or any node on the path to it, is missing
+	 */
+	public abstract Node resolve(Node root);
+
+	public abstract void set(Node root, Node value);
+	public abstract void set(Node root, Object value);
+
+	/**
+	 * @return java code that recreates this path, used by generated proxy classes
+	 */
+	public abstract String toJavaExpression();
+
+	/**
+	 * @return the field name of a path that is a single field of the node
+	 */
+	public abstract Optional<String> getFieldName();
+
+	/**
+	 * @return the field names of the path in order, empty for an index path
+	 */
+	public abstract List<String> getFieldNames();
+
+	/**
+	 * @return the index of an index path, -1 for a path of field names
+	 */
+	public abstract int getIndex();
+
+	private static final class Fields extends NodePath {
+		private final String[] fieldNames;
+
+		private Fields(String[] fieldNames) {
+			if (fieldNames.length == 0) {
+				throw new IllegalArgumentException("A node path must contain at least one field name");
+			}
+			this.fieldNames = fieldNames.clone();
+		}
+
+		@Override
+		public Node resolve(Node root) {
+			Node node = root;
+			for (int i = 0; i < fieldNames.length && node != null; i++) {
+				node = ((ContainerNode) node).get(fieldNames[i]);
+			}
+			return node;
+		}
+
+		@Override
+		public void set(Node root, Node value) {
+			parent(root).set(fieldNames[fieldNames.length - 1], value);
+		}
+
+		@Override
+		public void set(Node root, Object value) {
+			parent(root).set(fieldNames[fieldNames.length - 1], value);
+		}
+
+		private ContainerNode parent(Node root) {
+			Node node = root;
+			for (int i = 0; i < fieldNames.length - 1; i++) {
+				node = ((ContainerNode) node).get(fieldNames[i]);
+			}
+			return (ContainerNode) node;
+		}
+
+		@Override
+		public Optional<String> getFieldName() {
+			return fieldNames.length == 1 ? Optional.of(fieldNames[0]) : Optional.empty();
+		}
+
+		@Override
+		public List<String> getFieldNames() {
+			return Collections.unmodifiableList(Arrays.asList(fieldNames));
+		}
+
+		@Override
+		public int getIndex() {
+			return -1;
+		}
+
+		@Override
+		public String toJavaExpression() {
+			return Stream.of(fieldNames).map(TwynUtil::toJavaStringLiteral).collect(Collectors.joining(", ", "NodePath.fields(", ")"));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Fields && Arrays.equals(fieldNames, ((Fields) obj).fieldNames);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(fieldNames);
+		}
+
+		@Override
+		public String toString() {
+			return String.join(".", fieldNames);
+		}
+	}
+
+	private static final class Index extends NodePath {
+		private final int index;
+
+		private Index(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public Node resolve(Node root) {
+			return ((CollectionNode) root).get(index);
+		}
+
+		@Override
+		public void set(Node root, Node value) {
+			((CollectionNode) root).set(index, value);
+		}
+
+		@Override
+		public void set(Node root, Object value) {
+			((CollectionNode) root).set(index, value);
+		}
+
+		@Override
+		public Optional<String> getFieldName() {
+			return Optional.empty();
+		}
+
+		@Override
+		public List<String> getFieldNames() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public int getIndex() {
+			return index;
+		}
+
+		@Override
+		public String toJavaExpression() {
+			return "NodePath.index(" + index + ")";
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Index && index == ((Index) obj).index;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(index);
+		}
+
+		@Override
+		public String toString() {
+			return Integer.toString(index);
+		}
+	}
+}
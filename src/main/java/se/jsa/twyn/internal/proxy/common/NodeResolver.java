@@ -15,37 +15,38 @@
  */
 package se.jsa.twyn.internal.proxy.common;
 
-import com.google.common.base.Predicates;
 import se.jsa.twyn.ArrayIndex;
 import se.jsa.twyn.Resolve;
 import se.jsa.twyn.internal.MethodType;
-import se.jsa.twyn.internal.datamodel.CollectionNode;
-import se.jsa.twyn.internal.datamodel.ContainerNode;
-import se.jsa.twyn.internal.datamodel.Node;
 import se.jsa.twyn.internal.readmodel.ImplementedMethod;
 import se.jsa.twyn.internal.readmodel.ProxiedInterface;
+import se.jsa.twyn.internal.readmodel.reflect.ProxiedInterfaceClass;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public interface NodeResolver {
-	Node resolveNode(ImplementedMethod method, Node root);
+	NodePath getPath(ImplementedMethod method);
+	NodePath getSetPath(ImplementedMethod method);
 	String resolveNodeId(ImplementedMethod method);
 	String resolveSetNodeId(ImplementedMethod method);
 
-	void setNode(ImplementedMethod method, Node root, Node value);
-	void setNode(ImplementedMethod method, Node root, Object value);
-
 	Predicate<ImplementedMethod> WITH_TWYNINDEX = m -> m.hasAnnotation(ArrayIndex.class);
 
 	static NodeResolver getResolver(ProxiedInterface implementedType) {
+		if (implementedType instanceof ProxiedInterfaceClass) {
+			return ProxiedType.of(((ProxiedInterfaceClass) implementedType).getProxiedType()).getNodeResolver();
+		}
+		return createResolver(implementedType);
+	}
+
+	static NodeResolver createResolver(ProxiedInterface implementedType) {
 		return isArrayType(implementedType)
 				? new ArrayInvocationHandlerMethodResolver(implementedType)
 				: new MethodNameInvocationHandlerMethodResolver();
@@ -69,27 +70,15 @@ public interface NodeResolver {
 	}
 
 	static class MethodNameInvocationHandlerMethodResolver implements NodeResolver {
-		private static final BinaryOperator<Node> NO_BINARY_OP = (n1, n2) -> {
-			throw new RuntimeException("NO BINARY OP!");
-		};
 
 		@Override
-		public Node resolveNode(ImplementedMethod method, Node root) {
-			return Stream.of(readPath(method, TwynUtil::decodeJavaBeanGetName)).reduce(root, (n, p) -> ContainerNode.class.cast(n).get(p), NO_BINARY_OP);
+		public NodePath getPath(ImplementedMethod method) {
+			return readPath(method, TwynUtil::decodeJavaBeanGetName);
 		}
 
 		@Override
-		public void setNode(ImplementedMethod method, Node root, Node value) {
-			String[] path = readPath(method, TwynUtil::decodeJavaBeanSetName);
-			ContainerNode.class.cast(Stream.of(path).limit(path.length - 1).reduce(root, (n, p) -> ContainerNode.class.cast(n).get(p), NO_BINARY_OP))
-					.set(path[path.length - 1], value);
-		}
-
-		@Override
-		public void setNode(ImplementedMethod method, Node root, Object value) {
-			String[] path = readPath(method, TwynUtil::decodeJavaBeanSetName);
-			ContainerNode.class.cast(Stream.of(path).limit(path.length - 1).reduce(root, (n, p) -> ContainerNode.class.cast(n).get(p), NO_BINARY_OP))
-					.set(path[path.length - 1], value);
+		public NodePath getSetPath(ImplementedMethod method) {
+			return readPath(method, TwynUtil::decodeJavaBeanSetName);
 		}
 
 		@Override
@@ -106,18 +95,19 @@ public interface NodeResolver {
 					.orElseGet(() -> TwynUtil.decodeJavaBeanSetName(method.getName())) + "\"";
 		}
 
-		private String[] readPath(ImplementedMethod method, Function<String, String> nameDecoder) {
-			return (String[]) Optional.ofNullable(method.getAnnotation(Resolve.class))
-                            .map(Resolve::value)
-                            .map((resolve) -> resolve.split("\\."))
-                            .orElseGet(() -> new String[] { nameDecoder.apply(method.getName()) });
+		private NodePath readPath(ImplementedMethod method, Function<String, String> nameDecoder) {
+			return Optional.ofNullable(method.getAnnotation(Resolve.class))
+							.map(Resolve::value)
+							.map(NodePath::parse)
+							.orElseGet(() -> NodePath.fields(nameDecoder.apply(method.getName())));
 		}
 	}
 
 	static class ArrayInvocationHandlerMethodResolver implements NodeResolver {
-		private final Map<String, Integer> fieldOrder = new HashMap<>();
+		private final Map<String, Integer> fieldOrder;
 
 		public ArrayInvocationHandlerMethodResolver(ProxiedInterface implementedType) {
+			Map<String, Integer> fieldOrder = new HashMap<>();
 			implementedType.getMethods().stream()
 				.filter(MethodType.GETTER_TYPES_FILTER)
 				.filter(MethodType.DEFAULT.negate()) // Ignore default methods in array types
@@ -128,31 +118,28 @@ public interface NodeResolver {
 								"Attempts to map method '" + m.getName() + "' of type '" + implementedType + "'"
 								+ " to an array without providing a @" + ArrayIndex.class.getSimpleName() + " annotation."))
 						.value()));
+			this.fieldOrder = Collections.unmodifiableMap(fieldOrder);
 		}
 
 		@Override
-		public Node resolveNode(ImplementedMethod method, Node root) {
-			return ((CollectionNode) root).get(fieldOrder.get(TwynUtil.decodeJavaBeanGetName(method.getName())));
-		}
-		@Override
-		public String resolveNodeId(ImplementedMethod method) {
-			return fieldOrder.get(TwynUtil.decodeJavaBeanGetName(method.getName())).toString();
+		public NodePath getPath(ImplementedMethod method) {
+			return NodePath.index(fieldOrder.get(TwynUtil.decodeJavaBeanGetName(method.getName())));
 		}
 
 		@Override
-		public String resolveSetNodeId(ImplementedMethod method) {
-			return fieldOrder.get(TwynUtil.decodeJavaBeanGetName(method.getName())).toString();
+		public NodePath getSetPath(ImplementedMethod method) {
+			return getPath(method);
 		}
 
 		@Override
-		public void setNode(ImplementedMethod method, Node root, Node value) {
-			((CollectionNode) root).set(fieldOrder.get(TwynUtil.decodeJavaBeanGetName(method.getName())), value);
+		public String resolveNodeId(ImplementedMethod method) {
+			return fieldOrder.get(TwynUtil.decodeJavaBeanGetName(method.getName())).toString();
 		}
 
 		@Override
-		public void setNode(ImplementedMethod method, Node root, Object value) {
-			((CollectionNode) root).set(fieldOrder.get(TwynUtil.decodeJavaBeanGetName(method.getName())), value);
+		public String resolveSetNodeId(ImplementedMethod method) {
+			return fieldOrder.get(TwynUtil.decodeJavaBeanGetName(method.getName())).toString();
 		}
 	}
 
-}
\ No newline at end of file
+}
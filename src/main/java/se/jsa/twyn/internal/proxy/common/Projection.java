@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.common;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import se.jsa.twyn.internal.MethodType;
+import se.jsa.twyn.internal.readmodel.ImplementedMethod;
+import se.jsa.twyn.internal.readmodel.reflect.ImplementedMethodMethod;
+
+/**
+ * The part of a document that the proxies of a type can reach: the fields and array positions resolved by the
+ * getters and setters of the type and, below those, whatever the returned interfaces reach in turn. Values mapped
+ * by the ObjectMapper, and anything that is not known to be mapped by an interface, are reached as a whole.
+ * Projections are computed once per root type and are immutable once computed.
+ */
+public abstract class Projection {
+	private static final ClassValue<Projection> ROOTS = new ClassValue<Projection>() {
+		@Override
+		protected Projection computeValue(Class<?> type) {
+			try {
+				return root(type);
+			} catch (RuntimeException e) {
+				return ALL; // broken types are reported by their proxies, as they would be without a projection
+			}
+		}
+	};
+
+	/**
+	 * Reaches everything below it
+	 */
+	public static final Projection ALL = new Projection() {
+		@Override
+		public Projection field(String name) {
+			return this;
+		}
+
+		@Override
+		public Projection element(int index) {
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Projection [ALL]";
+		}
+	};
+
+	private Projection() {
+	}
+
+	/**
+	 * @param rootType a type as passed to Twyn.read: an interface, an array of interfaces or a Map of interfaces
+	 */
+	public static Projection of(Class<?> rootType) {
+		return ROOTS.get(rootType);
+	}
+
+	/**
+	 * @return the projection of the named field of an object node, or null if the field cannot be reached
+	 */
+	public abstract Projection field(String name);
+
+	/**
+	 * @return the projection of the element at index of an array node, or null if the element cannot be reached
+	 */
+	public abstract Projection element(int index);
+
+	public boolean isAll() {
+		return this == ALL;
+	}
+
+	private static Projection root(Class<?> type) {
+		Map<Class<?>, Shape> shapes = new HashMap<>();
+		if (type.isArray()) {
+			return Shape.elements(ofValue(type.getComponentType(), shapes));
+		} else if (Map.class.isAssignableFrom(type)) {
+			for (Type genericInterface : type.getGenericInterfaces()) {
+				if (genericInterface instanceof ParameterizedType && ((ParameterizedType) genericInterface).getRawType() == Map.class) {
+					return Shape.fields(ofValue(typeArgument(genericInterface, 1), shapes));
+				}
+			}
+			return ALL;
+		}
+		return ofValue(type, shapes);
+	}
+
+	private static Projection ofValue(Type type, Map<Class<?>, Shape> shapes) {
+		return type instanceof Class && ((Class<?>) type).isInterface()
+				? ofInterface((Class<?>) type, shapes)
+				: ALL;
+	}
+
+	private static Projection ofInterface(Class<?> type, Map<Class<?>, Shape> shapes) {
+		Shape shape = shapes.get(type);
+		if (shape == null) {
+			shape = new Shape(null, null);
+			shapes.put(type, shape); // before the methods are visited, types may reach themselves
+			ProxiedType proxiedType = ProxiedType.of(type);
+			for (ImplementedMethod method : proxiedType.getMethods()) {
+				if (CacheSlots.hasNodePath(method)) {
+					shape.add(proxiedType.getCacheSlots().getNodePath(method), ofMethod(((ImplementedMethodMethod) method).getMethod(), shapes));
+				}
+			}
+		}
+		return shape;
+	}
+
+	private static Projection ofMethod(Method method, Map<Class<?>, Shape> shapes) {
+		switch (MethodType.getType(ImplementedMethod.of(method))) {
+			case INTERFACE:
+				return ofValue(method.getReturnType(), shapes);
+			case ARRAY:
+				return Shape.elements(ofValue(method.getReturnType().getComponentType(), shapes));
+			case LIST:
+			case SET:
+				return Shape.elements(ofValue(typeArgument(method.getGenericReturnType(), 0), shapes));
+			case OPTIONAL:
+				return ofValue(typeArgument(method.getGenericReturnType(), 0), shapes);
+			case MAP:
+				return Shape.fields(ofValue(typeArgument(method.getGenericReturnType(), 1), shapes));
+			default:
+				return ALL;
+		}
+	}
+
+	private static Type typeArgument(Type type, int index) {
+		return type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[index] : Object.class;
+	}
+
+	static Projection merge(Projection a, Projection b) {
+		if (a == null || a == b) {
+			return b;
+		} else if (b == null) {
+			return a;
+		} else if (a.isAll() || b.isAll()) {
+			return ALL;
+		}
+		return new Merged(a, b);
+	}
+
+	/**
+	 * Named fields and indexed elements, and optionally any other field or element, with their projections
+	 */
+	private static final class Shape extends Projection {
+		private final Map<String, Projection> fields = new HashMap<>();
+		private final Map<Integer, Projection> indexes = new HashMap<>();
+		private final Projection anyField;
+		private final Projection anyElement;
+
+		private Shape(Projection anyField, Projection anyElement) {
+			this.anyField = anyField;
+			this.anyElement = anyElement;
+		}
+
+		static Projection elements(Projection element) {
+			return element.isAll() ? ALL : new Shape(null, element);
+		}
+
+		static Projection fields(Projection value) {
+			return value.isAll() ? ALL : new Shape(value, null);
+		}
+
+		void add(NodePath path, Projection value) {
+			if (path.getIndex() >= 0) {
+				indexes.merge(path.getIndex(), value, Projection::merge);
+				return;
+			}
+			List<String> fieldNames = path.getFieldNames();
+			Shape shape = this;
+			for (String fieldName : fieldNames.subList(0, fieldNames.size() - 1)) {
+				Shape next = new Shape(null, null); // never shared, shapes of other types must not change
+				Projection merged = merge(shape.fields.get(fieldName), next);
+				shape.fields.put(fieldName, merged);
+				if (merged.isAll()) {
+					return;
+				}
+				shape = next;
+			}
+			shape.fields.merge(fieldNames.get(fieldNames.size() - 1), value, Projection::merge);
+		}
+
+		@Override
+		public Projection field(String name) {
+			Projection projection = fields.get(name);
+			return projection != null ? projection : anyField;
+		}
+
+		@Override
+		public Projection element(int index) {
+			Projection projection = indexes.get(index);
+			return projection != null ? projection : anyElement;
+		}
+
+		@Override
+		public String toString() {
+			return "Projection [fields=" + fields.keySet() + ", indexes=" + indexes.keySet()
+					+ ", anyField=" + (anyField != null) + ", anyElement=" + (anyElement != null) + "]";
+		}
+	}
+
+	/**
+	 * Whatever either of two projections reach, merged lazily since projections may reach themselves
+	 */
+	private static final class Merged extends Projection {
+		private final Projection a;
+		private final Projection b;
+
+		private Merged(Projection a, Projection b) {
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		public Projection field(String name) {
+			return merge(a.field(name), b.field(name));
+		}
+
+		@Override
+		public Projection element(int index) {
+			return merge(a.element(index), b.element(index));
+		}
+
+		@Override
+		public String toString() {
+			return "Projection [" + a + " + " + b + "]";
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.common;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import se.jsa.twyn.internal.IdentityMethods;
+import se.jsa.twyn.internal.readmodel.ImplementedMethod;
+import se.jsa.twyn.internal.readmodel.reflect.ProxiedInterfaceClass;
+
+/**
+ * Registry of the immutable, per-interface metadata that all proxies of a type share, regardless of which
+ * proxy builder created them. Entries are computed once per class and released together with it.
+ */
+public class ProxiedType {
+	private static final ClassValue<ProxiedType> REGISTRY = new ClassValue<ProxiedType>() {
+		@Override
+		protected ProxiedType computeValue(Class<?> type) {
+			return new ProxiedType(ProxiedInterfaceClass.of(type));
+		}
+	};
+
+	private final ProxiedInterfaceClass proxiedInterface;
+	private final NodeResolver nodeResolver;
+	private final List<ImplementedMethod> identityMethods;
+	private final CacheSlots cacheSlots;
+
+	private ProxiedType(ProxiedInterfaceClass proxiedInterface) {
+		this.proxiedInterface = Objects.requireNonNull(proxiedInterface);
+		this.nodeResolver = NodeResolver.createResolver(proxiedInterface);
+		this.identityMethods = IdentityMethods.resolve(proxiedInterface);
+		this.cacheSlots = CacheSlots.create(proxiedInterface, nodeResolver);
+	}
+
+	public static ProxiedType of(Class<?> type) {
+		return REGISTRY.get(type);
+	}
+
+	public ProxiedInterfaceClass getProxiedInterface() {
+		return proxiedInterface;
+	}
+
+	public Collection<ImplementedMethod> getMethods() {
+		return proxiedInterface.getMethods();
+	}
+
+	public NodeResolver getNodeResolver() {
+		return nodeResolver;
+	}
+
+	public List<ImplementedMethod> getIdentityMethods() {
+		return identityMethods;
+	}
+
+	public CacheSlots getCacheSlots() {
+		return cacheSlots;
+	}
+
+	@Override
+	public String toString() {
+		return "ProxiedType [" + proxiedInterface.getCanonicalName() + "]";
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defines proxy classes from their class files where they see their interface, resolving the Twyn classes the
+ * interface's loader cannot see through the loader of Twyn.
+ */
+public class ProxyClassLoader extends ClassLoader {
+	private final Map<String, byte[]> classFiles;
+
+	/**
+	 * @param classFiles class files by binary class name
+	 */
+	public ProxyClassLoader(ClassLoader parent, Map<String, byte[]> classFiles) {
+		super(parent);
+		this.classFiles = new HashMap<>(classFiles);
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		byte[] classFile;
+		synchronized (classFiles) {
+			classFile = classFiles.remove(name);
+		}
+		if (classFile != null) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+		return ProxyClassLoader.class.getClassLoader().loadClass(name);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.common;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import se.jsa.twyn.internal.MethodType;
+import se.jsa.twyn.internal.readmodel.ImplementedMethod;
+import se.jsa.twyn.internal.readmodel.reflect.ImplementedMethodMethod;
+import se.jsa.twyn.internal.readmodel.reflect.ProxiedInterfaceClass;
+
+/**
+ * Finds the interfaces a proxy may hand out: the roots themselves and every interface returned, directly or as the
+ * element type of an array, List, Set, Optional or Map value, by their getters.
+ */
+public class ReachableInterfaces {
+
+	private ReachableInterfaces() {
+	}
+
+	/**
+	 * @return the proxied interfaces reachable from the given roots, roots first and in discovery order
+	 */
+	public static Set<Class<?>> of(Collection<? extends Class<?>> roots) {
+		Set<Class<?>> result = new LinkedHashSet<>();
+		Deque<Class<?>> toVisit = new ArrayDeque<>(roots);
+		while (!toVisit.isEmpty()) {
+			Class<?> type = toVisit.removeFirst();
+			if (Map.class.isAssignableFrom(type)) {
+				addMapValueType(type, toVisit);
+			} else if (type.isInterface() && result.add(type)) {
+				for (ImplementedMethod method : ProxiedInterfaceClass.of(type).getMethods()) {
+					addReturnedInterface(((ImplementedMethodMethod) method).getMethod(), toVisit);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static void addReturnedInterface(Method method, Deque<Class<?>> toVisit) {
+		switch (MethodType.getType(ImplementedMethod.of(method))) {
+			case INTERFACE:
+				toVisit.addLast(method.getReturnType());
+				break;
+			case ARRAY:
+				toVisit.addLast(method.getReturnType().getComponentType());
+				break;
+			case LIST:
+			case SET:
+			case OPTIONAL:
+				addTypeArgument(method.getGenericReturnType(), 0, toVisit);
+				break;
+			case MAP:
+				addTypeArgument(method.getGenericReturnType(), 1, toVisit);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static void addMapValueType(Class<?> mapType, Deque<Class<?>> toVisit) {
+		for (Type genericInterface : mapType.getGenericInterfaces()) {
+			if (genericInterface instanceof ParameterizedType && ((ParameterizedType) genericInterface).getRawType() == Map.class) {
+				addTypeArgument(genericInterface, 1, toVisit);
+			}
+		}
+	}
+
+	private static void addTypeArgument(Type type, int index, Deque<Class<?>> toVisit) {
+		if (type instanceof ParameterizedType) {
+			Type argument = ((ParameterizedType) type).getActualTypeArguments()[index];
+			if (argument instanceof Class && ((Class<?>) argument).isInterface()) {
+				toVisit.addLast((Class<?>) argument);
+			}
+		}
+	}
+}
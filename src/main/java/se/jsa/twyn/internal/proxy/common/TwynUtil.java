@@ -43,6 +43,21 @@ public class TwynUtil {
 		return resolve(name, ALL_PREFIXES);
 	}
 
+	public static String toJavaStringLiteral(String value) {
+		StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+		for (char c : value.toCharArray()) {
+			switch (c) {
+				case '"':	literal.append("\\\""); break;
+				case '\\':	literal.append("\\\\"); break;
+				case '\n':	literal.append("\\n"); break;
+				case '\r':	literal.append("\\r"); break;
+				case '\t':	literal.append("\\t"); break;
+				default:	literal.append(c < 0x20 ? String.format("\\u%04x", (int) c) : String.valueOf(c));
+			}
+		}
+		return literal.append('"').toString();
+	}
+
 	// private helper methods
 
 	private static String resolve(String name, Collection<String> prefixes) {
@@ -15,25 +15,81 @@
  */
 package se.jsa.twyn.internal.proxy.reflect;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.util.concurrent.atomic.AtomicReference;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
 
 import se.jsa.twyn.TwynProxyException;
 
+/**
+ * Resolves default interface methods to unbound special method handles once, so that calling them through a proxy
+ * is an exact invocation instead of a reflective lookup followed by a varargs call.
+ */
 class DefaultMethodLookup {
 
-	public DefaultMethodLookup() {
+	private DefaultMethodLookup() {
 	}
-	
-	public Lookup lookup(Object declaringClass) throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-		return MethodHandles.lookup();
+
+	public static DefaultMethodCall lookup(Method method) {
+		Class<?> declaringClass = method.getDeclaringClass();
+		try {
+			MethodHandle special = MethodHandles.lookup()
+					.findSpecial(declaringClass,
+							method.getName(),
+							MethodType.methodType(method.getReturnType(), method.getParameterTypes()),
+							declaringClass);
+			return DefaultMethodCall.of(special.asType(MethodType.genericMethodType(special.type().parameterCount())));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new TwynProxyException("Could not look up default method " + method, e);
+		}
 	}
 
-	private static final AtomicReference<DefaultMethodLookup> dml = new AtomicReference<>();
-	public static DefaultMethodLookup create() {
-		return dml.updateAndGet(dml -> dml != null ? dml : new DefaultMethodLookup());
+	/**
+	 * A default method handle adapted to (Object, Object...)Object, invoked with the exact arity of the method.
+	 */
+	static abstract class DefaultMethodCall {
+		protected final MethodHandle handle;
+
+		private DefaultMethodCall(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		public abstract Object invoke(Object proxy, Object[] args) throws Throwable;
+
+		static DefaultMethodCall of(MethodHandle genericHandle) {
+			switch (genericHandle.type().parameterCount() - 1) {
+				case 0: return new DefaultMethodCall(genericHandle) {
+					@Override
+					public Object invoke(Object proxy, Object[] args) throws Throwable {
+						return handle.invokeExact(proxy);
+					}
+				};
+				case 1: return new DefaultMethodCall(genericHandle) {
+					@Override
+					public Object invoke(Object proxy, Object[] args) throws Throwable {
+						return handle.invokeExact(proxy, args[0]);
+					}
+				};
+				case 2: return new DefaultMethodCall(genericHandle) {
+					@Override
+					public Object invoke(Object proxy, Object[] args) throws Throwable {
+						return handle.invokeExact(proxy, args[0], args[1]);
+					}
+				};
+				case 3: return new DefaultMethodCall(genericHandle) {
+					@Override
+					public Object invoke(Object proxy, Object[] args) throws Throwable {
+						return handle.invokeExact(proxy, args[0], args[1], args[2]);
+					}
+				};
+				default: return new DefaultMethodCall(genericHandle.asSpreader(Object[].class, genericHandle.type().parameterCount() - 1)) {
+					@Override
+					public Object invoke(Object proxy, Object[] args) throws Throwable {
+						return handle.invokeExact(proxy, args);
+					}
+				};
+			}
+		}
 	}
 }
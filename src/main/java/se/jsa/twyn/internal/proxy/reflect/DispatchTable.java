@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.reflect;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import se.jsa.twyn.TwynProxyException;
+import se.jsa.twyn.internal.ErrorFactory;
+import se.jsa.twyn.internal.MethodType;
+import se.jsa.twyn.internal.proxy.common.CacheSlots;
+import se.jsa.twyn.internal.proxy.common.NodePath;
+import se.jsa.twyn.internal.proxy.common.NodeResolver;
+import se.jsa.twyn.internal.proxy.common.ProxiedType;
+import se.jsa.twyn.internal.proxy.common.TwynUtil;
+import se.jsa.twyn.internal.readmodel.ImplementedMethod;
+import se.jsa.twyn.internal.readmodel.reflect.ImplementedMethodMethod;
+import se.jsa.twyn.internal.readmodel.reflect.ProxiedInterfaceClass;
+
+/**
+ * Everything {@link TwynProxyInvocationHandler} needs to know about the methods of one proxied interface,
+ * resolved once per type and shared by all handlers of that type.
+ */
+class DispatchTable {
+	private static final ClassValue<DispatchTable> DISPATCH_TABLES = new ClassValue<DispatchTable>() {
+		@Override
+		protected DispatchTable computeValue(Class<?> type) {
+			return new DispatchTable(ProxiedType.of(type));
+		}
+	};
+	private static final Method TO_STRING = getObjectMethod("toString");
+	private static final Method EQUALS = getObjectMethod("equals", Object.class);
+	private static final Method HASH_CODE = getObjectMethod("hashCode");
+
+	private final ProxiedInterfaceClass implementedType;
+	private final NodeResolver nodeResolver;
+	private final List<Entry> identityEntries;
+	private final int cacheSize;
+	private final Map<Method, Entry> entries;
+
+	private DispatchTable(ProxiedType proxiedType) {
+		this.implementedType = proxiedType.getProxiedInterface();
+		this.nodeResolver = proxiedType.getNodeResolver();
+		this.cacheSize = proxiedType.getCacheSlots().size();
+
+		Map<Method, Entry> entries = new HashMap<>();
+		for (Method method : implementedType.getProxiedType().getMethods()) {
+			entries.put(method, new Entry(method, implementedType, proxiedType.getCacheSlots()));
+		}
+		entries.put(TO_STRING, new Entry(TO_STRING, (handler, proxy, args) -> handler.toString()));
+		entries.put(EQUALS, new Entry(EQUALS, (handler, proxy, args) -> handler.equals(args[0])));
+		entries.put(HASH_CODE, new Entry(HASH_CODE, (handler, proxy, args) -> handler.hashCode()));
+		this.entries = entries;
+		this.identityEntries = Collections.unmodifiableList(proxiedType.getIdentityMethods().stream()
+				.map(m -> entries.get(((ImplementedMethodMethod) m).getMethod()))
+				.collect(Collectors.toList()));
+	}
+
+	public static DispatchTable of(Class<?> type) {
+		return DISPATCH_TABLES.get(type);
+	}
+
+	public Entry get(Method method) {
+		Entry entry = entries.get(method);
+		if (entry == null) {
+			throw new TwynProxyException("Method " + method + " is not supported by proxies of type " + implementedType.getCanonicalName());
+		}
+		return entry;
+	}
+
+	public ProxiedInterfaceClass getImplementedType() {
+		return implementedType;
+	}
+
+	public NodeResolver getNodeResolver() {
+		return nodeResolver;
+	}
+
+	/**
+	 * @return the entries of the methods that make up the identity of a proxy, in declaration order
+	 */
+	public List<Entry> getIdentityEntries() {
+		return identityEntries;
+	}
+
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	@Override
+	public String toString() {
+		return "DispatchTable<" + implementedType.getSimpleName() + "> " + entries.keySet().stream().map(Method::getName).collect(Collectors.joining(", ", "[", "]"));
+	}
+
+	private static Method getObjectMethod(String name, Class<?>... parameterTypes) {
+		try {
+			return Object.class.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Could not find Object." + name, e);
+		}
+	}
+
+	@FunctionalInterface
+	interface Invoker {
+		Object invoke(TwynProxyInvocationHandler handler, Object proxy, Object[] args) throws Throwable;
+	}
+
+	static class Entry {
+		private final Method method;
+		private final ImplementedMethod implementedMethod;
+		private final MethodType methodType;
+		private final String propertyName;
+		private final NodePath nodePath;
+		private final int cacheSlot;
+		private final int[] clearedCacheSlots;
+		private final Class<?>[] returnTypeParameterTypes;
+		private final Invoker invoker;
+
+		private Entry(Method method, Invoker invoker) {
+			this.method = method;
+			this.implementedMethod = ImplementedMethod.of(method);
+			this.methodType = null;
+			this.propertyName = method.getName();
+			this.nodePath = null;
+			this.cacheSlot = -1;
+			this.clearedCacheSlots = new int[0];
+			this.returnTypeParameterTypes = new Class<?>[0];
+			this.invoker = invoker;
+		}
+
+		private Entry(Method method, ProxiedInterfaceClass implementedType, CacheSlots cacheSlots) {
+			this.method = method;
+			this.implementedMethod = ImplementedMethod.of(method);
+			this.methodType = MethodType.getType(implementedMethod);
+			this.propertyName = TwynUtil.decodeJavaBeanName(method.getName());
+			this.nodePath = CacheSlots.hasNodePath(implementedMethod) ? cacheSlots.getNodePath(implementedMethod) : null;
+			this.cacheSlot = CacheSlots.hasNodePath(implementedMethod) && methodType != MethodType.SET_VALUE ? cacheSlots.getSlot(implementedMethod) : -1;
+			this.clearedCacheSlots = methodType == MethodType.SET_VALUE ? cacheSlots.getClearedSlots(implementedMethod) : new int[0];
+			this.returnTypeParameterTypes = resolveReturnTypeParameterTypes(implementedMethod, methodType);
+			this.invoker = createInvoker(this, implementedType);
+		}
+
+		private static Class<?>[] resolveReturnTypeParameterTypes(ImplementedMethod implementedMethod, MethodType methodType) {
+			try {
+				return doResolveReturnTypeParameterTypes(implementedMethod, methodType);
+			} catch (TwynProxyException e) {
+				return null; // unresolvable generic types are reported when the method is called, as they always have been
+			}
+		}
+
+		private static Class<?>[] doResolveReturnTypeParameterTypes(ImplementedMethod implementedMethod, MethodType methodType) {
+			switch (methodType) {
+				case LIST:
+				case SET:
+				case OPTIONAL:
+					return new Class<?>[] { implementedMethod.getReturnTypeParameterType(0) };
+				case MAP:
+					return new Class<?>[] { implementedMethod.getReturnTypeParameterType(0), implementedMethod.getReturnTypeParameterType(1) };
+				default:
+					return new Class<?>[0];
+			}
+		}
+
+		private static Invoker createInvoker(Entry entry, ProxiedInterfaceClass implementedType) {
+			if (entry.returnTypeParameterTypes == null) {
+				return (handler, proxy, args) -> doResolveReturnTypeParameterTypes(entry.implementedMethod, entry.methodType);
+			}
+			switch (entry.methodType) {
+				case DEFAULT:	return createDefaultMethodInvoker(entry.method);
+				case ARRAY:		return (handler, proxy, args) -> handler.cached(entry, () -> handler.innerArrayProxy(entry));
+				case LIST:		return (handler, proxy, args) -> handler.cached(entry, () -> handler.innerCollectionProxy(entry, Collectors.toList()));
+				case SET:		return (handler, proxy, args) -> handler.cached(entry, () -> handler.innerCollectionProxy(entry, Collectors.toSet()));
+				case MAP:		return (handler, proxy, args) -> handler.cached(entry, () -> handler.innerMapProxy(entry));
+				case INTERFACE:	return (handler, proxy, args) -> handler.cached(entry, () -> handler.innerProxy(entry));
+				case VALUE:		return (handler, proxy, args) -> handler.cached(entry, () -> handler.resolveValue(entry));
+				case OPTIONAL:	return entry.getReturnTypeParameterType(0).isInterface()
+						? (handler, proxy, args) -> handler.cached(entry, () -> handler.resolveOptionalInterface(entry))
+						: (handler, proxy, args) -> handler.cached(entry, () -> handler.resolveOptionalValue(entry));
+				case SET_VALUE:	return (handler, proxy, args) -> handler.setValue(proxy, entry, args[0]);
+				default:		return (handler, proxy, args) -> { throw ErrorFactory.proxyValidationError(implementedType, entry.implementedMethod).get(); };
+			}
+		}
+
+		private static Invoker createDefaultMethodInvoker(Method method) {
+			try {
+				DefaultMethodLookup.DefaultMethodCall defaultMethodCall = DefaultMethodLookup.lookup(method);
+				return (handler, proxy, args) -> defaultMethodCall.invoke(proxy, args);
+			} catch (TwynProxyException e) {
+				return (handler, proxy, args) -> { throw e; };
+			}
+		}
+
+		public Object invoke(TwynProxyInvocationHandler handler, Object proxy, Object[] args) throws Throwable {
+			return invoker.invoke(handler, proxy, args);
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		public ImplementedMethod getImplementedMethod() {
+			return implementedMethod;
+		}
+
+		public MethodType getMethodType() {
+			return methodType;
+		}
+
+		public String getPropertyName() {
+			return propertyName;
+		}
+
+		public NodePath getNodePath() {
+			return nodePath;
+		}
+
+		public int getCacheSlot() {
+			return cacheSlot;
+		}
+
+		public int[] getClearedCacheSlots() {
+			return clearedCacheSlots;
+		}
+
+		public Class<?> getReturnTypeParameterType(int i) {
+			return returnTypeParameterTypes[i];
+		}
+
+		@Override
+		public String toString() {
+			return "Entry [method=" + method.getName() + ", methodType=" + methodType + ", propertyName=" + propertyName + ", cacheSlot=" + cacheSlot + "]";
+		}
+	}
+}
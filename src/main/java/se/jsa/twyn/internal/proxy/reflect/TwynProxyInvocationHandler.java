@@ -20,181 +20,131 @@ import se.jsa.twyn.internal.*;
 import se.jsa.twyn.internal.datamodel.CollectionNode;
 import se.jsa.twyn.internal.datamodel.ContainerNode;
 import se.jsa.twyn.internal.datamodel.Node;
-import se.jsa.twyn.internal.proxy.common.NodeResolver;
-import se.jsa.twyn.internal.proxy.common.TwynUtil;
-import se.jsa.twyn.internal.readmodel.ImplementedMethod;
-import se.jsa.twyn.internal.readmodel.reflect.ImplementedMethodMethod;
 import se.jsa.twyn.internal.readmodel.reflect.ProxiedInterfaceClass;
 
 import java.io.IOException;
-import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collector;
-import java.util.stream.Collectors;
 
 class TwynProxyInvocationHandler implements InvocationHandler, NodeSupplier {
     private static final Object[] NO_ARGS = new Object[]{};
 
     private final Node node;
     private final TwynContext twynContext;
+    private final DispatchTable dispatchTable;
     private final ProxiedInterfaceClass implementedType;
     private final Cache cache;
-    private final NodeResolver nodeResolver;
-    private final DefaultMethodLookup defaultMethodLookup;
+    private final Runnable invocationListener;
 
-    public TwynProxyInvocationHandler(Node node, TwynContext twynContext, ProxiedInterfaceClass implementedType) {
-        this.node = node;
-        this.twynContext = Objects.requireNonNull(twynContext);
-        this.implementedType = Objects.requireNonNull(implementedType);
-        this.cache = Objects.requireNonNull(twynContext.createCache());
-        this.nodeResolver = NodeResolver.getResolver(implementedType);
-        this.defaultMethodLookup = DefaultMethodLookup.create();
+    public TwynProxyInvocationHandler(Node node, TwynContext twynContext, DispatchTable dispatchTable) {
+        this(node, twynContext, dispatchTable, null);
     }
 
-    public static TwynProxyInvocationHandler create(Node node, TwynContext twynContext, ProxiedInterfaceClass implementedType) throws Exception {
-        return new TwynProxyInvocationHandler(node, twynContext, implementedType);
+    TwynProxyInvocationHandler(Node node, TwynContext twynContext, DispatchTable dispatchTable, Runnable invocationListener) {
+        this.node = node;
+        this.twynContext = Objects.requireNonNull(twynContext);
+        this.dispatchTable = Objects.requireNonNull(dispatchTable);
+        this.implementedType = dispatchTable.getImplementedType();
+        this.cache = Objects.requireNonNull(twynContext.createCache(dispatchTable.getCacheSize()));
+        this.invocationListener = invocationListener;
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        if (hasSignature(method, "toString")) {
-            return toString();
-        } else if (hasSignature(method, "equals", Object.class)) {
-            return equals(args[0]);
-        } else if (hasSignature(method, "hashCode")) {
-            return hashCode();
-        }
-
-        ImplementedMethod implementedMethod = ImplementedMethod.of(method);
-        switch (MethodType.getType(implementedMethod)) {
-            case DEFAULT:
-                return callDefaultMethod(proxy, method, args);
-            case ARRAY:
-                return cache.get(TwynUtil.decodeJavaBeanName(method.getName()), () -> innerArrayProxy(method));
-            case LIST:
-                return cache.get(TwynUtil.decodeJavaBeanName(method.getName()), () -> innerCollectionProxy(method, Collectors.toList()));
-            case SET:
-                return cache.get(TwynUtil.decodeJavaBeanName(method.getName()), () -> innerCollectionProxy(method, Collectors.toSet()));
-            case MAP:
-                return cache.get(TwynUtil.decodeJavaBeanName(method.getName()), () -> innerMapProxy(method));
-            case INTERFACE:
-                return cache.get(TwynUtil.decodeJavaBeanName(method.getName()), () -> innerProxy(method));
-            case VALUE:
-                return cache.get(TwynUtil.decodeJavaBeanName(method.getName()), () -> resolveValue(method));
-            case OPTIONAL:
-                return cache.get(TwynUtil.decodeJavaBeanName(method.getName()), () -> resolveOptional(method));
-            case SET_VALUE:
-                return setValue(proxy, method, args);
-            default:
-                throw ErrorFactory.proxyValidationError(implementedType, implementedMethod).get();
+        if (invocationListener != null) {
+            invocationListener.run();
         }
+        return dispatchTable.get(method).invoke(this, proxy, args);
     }
 
-    private boolean hasSignature(Method method, String name, Class<?>... params) {
-        return method.getName().equals(name) && Arrays.deepEquals(method.getParameterTypes(), params);
-    }
-
-    private Object callDefaultMethod(Object proxy, Method method, Object[] args) throws Throwable {
-        Class<?> declaringClass = method.getDeclaringClass();
-
-        return MethodHandles.lookup()
-                .findSpecial(declaringClass,
-                        method.getName(),
-                        java.lang.invoke.MethodType.methodType(method.getReturnType(), method.getParameterTypes()),
-                        declaringClass)
-                .bindTo(proxy)
-                .invokeWithArguments(args);
+    <T> T cached(DispatchTable.Entry entry, Supplier<T> supplier) {
+        return cache.get(entry.getCacheSlot(), supplier);
     }
 
     @SuppressWarnings("unchecked")
-    private <T, A, R> R innerCollectionProxy(Method method, Collector<T, A, R> collector) {
-        ImplementedMethod implementedMethod = ImplementedMethod.of(method);
-        String returnTypeParameterTypeCanonicalName = implementedMethod.getReturnTypeParameterTypeCanonicalName(0);
-        return tryResolveTargetGetNode(method).map(node -> {
-            Require.that(node.isCollection(), ErrorFactory.proxyCollectionNotCollectionType(returnTypeParameterTypeCanonicalName, method, this.node));
-            return twynContext.proxyCollection((Class<T>) implementedMethod.getReturnTypeParameterType(0),
-                    (CollectionNode) node,
-                    collector);
+    <T, A, R> R innerCollectionProxy(DispatchTable.Entry entry, Collector<T, A, R> collector) {
+        Class<T> componentType = (Class<T>) entry.getReturnTypeParameterType(0);
+        return tryResolveTargetGetNode(entry).map(node -> {
+            Require.that(node.isCollection(), ErrorFactory.proxyCollectionNotCollectionType(componentType.getTypeName(), entry.getMethod(), this.node));
+            return twynContext.proxyCollection(componentType, (CollectionNode) node, collector);
         }).orElseGet(() -> collector.finisher().apply(collector.supplier().get()));
     }
 
-    private Object innerMapProxy(Method method) {
-        ImplementedMethod implementedMethod = ImplementedMethod.of(method);
-        Class<?> valueComponentType = implementedMethod.getReturnTypeParameterType(1);
-        Class<?> keyType = implementedMethod.getReturnTypeParameterType(0);
+    Object innerMapProxy(DispatchTable.Entry entry) {
+        Class<?> keyType = entry.getReturnTypeParameterType(0);
+        Class<?> valueComponentType = entry.getReturnTypeParameterType(1);
 
-        return tryResolveTargetGetNode(method).map(node -> {
-            Require.that(node.isContainerNode(), ErrorFactory.innerMapProxyNoMapStructure(method, node));
+        return tryResolveTargetGetNode(entry).map(node -> {
+            Require.that(node.isContainerNode(), ErrorFactory.innerMapProxyNoMapStructure(entry.getMethod(), node));
             return twynContext.proxyMap(keyType, valueComponentType, ContainerNode.class.cast(node));
         }).orElseGet(Collections::emptyMap);
     }
 
-    private <T> Object innerArrayProxy(Method method) {
+    <T> Object innerArrayProxy(DispatchTable.Entry entry) {
         @SuppressWarnings("unchecked")
-        Class<T> componentType = (Class<T>) method.getReturnType().getComponentType();
-        return tryResolveTargetGetNode(method).map(node -> {
-            Require.that(node.isCollection(), ErrorFactory.proxyArrayNodeNotCollectionType(componentType, method, this.node));
+        Class<T> componentType = (Class<T>) entry.getMethod().getReturnType().getComponentType();
+        return tryResolveTargetGetNode(entry).map(node -> {
+            Require.that(node.isCollection(), ErrorFactory.proxyArrayNodeNotCollectionType(componentType, entry.getMethod(), this.node));
             return twynContext.proxyArray((CollectionNode) node, componentType);
         }).orElseGet(() -> Array.newInstance(componentType, 0));
     }
 
-    private Object innerProxy(Method method) {
-        return tryResolveTargetGetNode(method).map(node -> {
-            Require.that(node.isContainerNode(), ErrorFactory.innerProxyNoStruct(method, node));
-            return twynContext.proxy(node, method.getReturnType());
+    Object innerProxy(DispatchTable.Entry entry) {
+        return tryResolveTargetGetNode(entry).map(node -> {
+            Require.that(node.isContainerNode(), ErrorFactory.innerProxyNoStruct(entry.getMethod(), node));
+            return twynContext.proxy(node, entry.getMethod().getReturnType());
         }).orElse(null);
     }
 
-    private Object setValue(Object proxy, Method method, Object[] args) {
-        if (twynContext.getNodeProducer().canMapToPrimitive(args[0])) {
-            nodeResolver.setNode(ImplementedMethod.of(method), node, args[0]);
+    Object setValue(Object proxy, DispatchTable.Entry entry, Object value) {
+        if (twynContext.getNodeProducer().canMapToPrimitive(value)) {
+            entry.getNodePath().set(node, value);
         } else {
-            nodeResolver.setNode(ImplementedMethod.of(method), node, twynContext.writeValue(args[0]));
+            entry.getNodePath().set(node, twynContext.writeValue(value));
+        }
+        for (int cacheSlot : entry.getClearedCacheSlots()) {
+            cache.clear(cacheSlot);
         }
-        cache.clear(TwynUtil.decodeJavaBeanName(method.getName()));
         return proxy;
     }
 
-    private Object resolveValue(Method method) {
-        return tryResolveTargetGetNode(method).map(node -> {
+    Object resolveValue(DispatchTable.Entry entry) {
+        Class<?> returnType = entry.getMethod().getReturnType();
+        return tryResolveTargetGetNode(entry).map(node -> {
             try {
-                return (Object) twynContext.readValue(node, method.getReturnType());
+                return (Object) twynContext.readValue(node, returnType);
             } catch (IOException e) {
-                throw new TwynProxyException("Could not resolve value for node " + node + ". Wanted type: " + method.getReturnType(), e);
+                throw new TwynProxyException("Could not resolve value for node " + node + ". Wanted type: " + returnType, e);
             }
-        }).orElseGet(() -> ImplementedMethod.of(method).returnsArray() ? Array.newInstance(method.getReturnType().getComponentType(), 0) : null);
-    }
-
-    private Object resolveOptional(Method method) {
-        ImplementedMethod implementedMethod = ImplementedMethod.of(method);
-        return implementedMethod.getReturnTypeParameterType(0).isInterface()
-                ? resolveOptionalInterface(method, implementedMethod)
-                : resolveOptionalValue(method, implementedMethod);
+        }).orElseGet(() -> returnType.isArray() ? Array.newInstance(returnType.getComponentType(), 0) : null);
     }
 
-    private Object resolveOptionalInterface(Method method, ImplementedMethod implementedMethod) {
-        return tryResolveTargetGetNode(method).map(node -> {
-            Require.that(node.isContainerNode(), ErrorFactory.innerProxyNoStruct(method.getName(), implementedMethod.getReturnTypeParameterTypeCanonicalName(0), node));
-            return Optional.of(twynContext.proxy(node, implementedMethod.getReturnTypeParameterType(0)));
+    Object resolveOptionalInterface(DispatchTable.Entry entry) {
+        Class<?> valueType = entry.getReturnTypeParameterType(0);
+        return tryResolveTargetGetNode(entry).map(node -> {
+            Require.that(node.isContainerNode(), ErrorFactory.innerProxyNoStruct(entry.getMethod().getName(), valueType.getTypeName(), node));
+            return Optional.of(twynContext.proxy(node, valueType));
         }).orElse(Optional.empty());
     }
 
-    private Object resolveOptionalValue(Method method, ImplementedMethod implementedMethod) {
-        return tryResolveTargetGetNode(method).<Object>map(node -> {
+    Object resolveOptionalValue(DispatchTable.Entry entry) {
+        Class<?> valueType = entry.getReturnTypeParameterType(0);
+        return tryResolveTargetGetNode(entry).<Object>map(node -> {
             try {
-                return Optional.of(twynContext.readValue(node, implementedMethod.getReturnTypeParameterType(0)));
+                return Optional.of(twynContext.readValue(node, valueType));
             } catch (IOException e) {
-                throw new TwynProxyException("Could not resolve value for node " + node + ". Wanted type: " + implementedMethod.getReturnTypeParameterType(0), e);
+                throw new TwynProxyException("Could not resolve value for node " + node + ". Wanted type: " + valueType, e);
             }
         }).orElse(Optional.empty());
     }
 
-    private Optional<Node> tryResolveTargetGetNode(Method method) {
-        return Optional.ofNullable(nodeResolver.resolveNode(ImplementedMethod.of(method), node));
+    private Optional<Node> tryResolveTargetGetNode(DispatchTable.Entry entry) {
+        return Optional.ofNullable(entry.getNodePath().resolve(node));
     }
 
     @Override
@@ -204,18 +154,16 @@ class TwynProxyInvocationHandler implements InvocationHandler, NodeSupplier {
 
     @Override
     public String toString() {
-        return "TwynProxyInvocationHandler<" + implementedType.getSimpleName() + "> [" +
-                twynContext.getIdentityMethods().getIdentityMethods(implementedType)
-                        .map((m) -> {
-                            try {
-                                return m.getName() + "()=" + this.invoke(null, getMethod(m), NO_ARGS);
-                            } catch (Throwable e) {
-                                throw new TwynProxyException("Could not call method " + m + " for toString calculation.", e);
-                            }
-                        })
-                        .reduce(null, (s1, s2) -> (s1 == null ? s2 : (s2 == null ? s1 : s1 + ", " + s2)))
-                + (twynContext.isDebug() ? ", node=\"" + node + "\"" : "")
-                + "]";
+        StringBuilder result = new StringBuilder("TwynProxyInvocationHandler<").append(implementedType.getSimpleName()).append("> [");
+        String separator = "";
+        for (DispatchTable.Entry entry : dispatchTable.getIdentityEntries()) {
+            result.append(separator).append(entry.getMethod().getName()).append("()=").append(invokeIdentityMethod(entry, "toString calculation"));
+            separator = ", ";
+        }
+        if (twynContext.isDebug()) {
+            result.append(", node=\"").append(node).append("\"");
+        }
+        return result.append("]").toString();
     }
 
     @Override
@@ -226,31 +174,51 @@ class TwynProxyInvocationHandler implements InvocationHandler, NodeSupplier {
         if (!implementedType.isAssignableFrom(obj.getClass())) {
             return false;
         }
-        return twynContext.getIdentityMethods().getIdentityMethods(implementedType)
-                .allMatch((m) -> {
-                    try {
-                        return Objects.equals(getMethod(m).invoke(obj), this.invoke(null, getMethod(m), NO_ARGS));
-                    } catch (Throwable e) {
-                        throw new TwynProxyException("Could not call method " + m + " for equals comparison..", e);
-                    }
-                });
+        TwynProxyInvocationHandler other = getTwynHandler(obj);
+        if (other != null && other.dispatchTable == dispatchTable) {
+            for (DispatchTable.Entry entry : dispatchTable.getIdentityEntries()) {
+                if (!Objects.equals(other.invokeIdentityMethod(entry, "equals comparison"), invokeIdentityMethod(entry, "equals comparison"))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (DispatchTable.Entry entry : dispatchTable.getIdentityEntries()) {
+            try {
+                if (!Objects.equals(entry.getMethod().invoke(obj), invokeIdentityMethod(entry, "equals comparison"))) {
+                    return false;
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new TwynProxyException("Could not call method " + entry.getMethod() + " for equals comparison..", e);
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(twynContext.getIdentityMethods().getIdentityMethods(implementedType)
-                .map((m) -> {
-                    try {
-                        return this.invoke(null, getMethod(m), NO_ARGS);
-                    } catch (Throwable e) {
-                        throw new TwynProxyException("Could not call method " + m + " for hashCode calculation.", e);
-                    }
-                })
-                .toArray());
+        List<DispatchTable.Entry> identityEntries = dispatchTable.getIdentityEntries();
+        Object[] values = new Object[identityEntries.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = invokeIdentityMethod(identityEntries.get(i), "hashCode calculation");
+        }
+        return Objects.hash(values);
+    }
+
+    private Object invokeIdentityMethod(DispatchTable.Entry entry, String purpose) {
+        try {
+            return entry.invoke(this, null, NO_ARGS);
+        } catch (Throwable e) {
+            throw new TwynProxyException("Could not call method " + entry.getImplementedMethod() + " for " + purpose + ".", e);
+        }
     }
 
-    private Method getMethod(ImplementedMethod method) {
-        return ((ImplementedMethodMethod) method).getMethod();
+    private static TwynProxyInvocationHandler getTwynHandler(Object obj) {
+        if (Proxy.isProxyClass(obj.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(obj);
+            return handler instanceof TwynProxyInvocationHandler ? (TwynProxyInvocationHandler) handler : null;
+        }
+        return null;
     }
 
-}
\ No newline at end of file
+}
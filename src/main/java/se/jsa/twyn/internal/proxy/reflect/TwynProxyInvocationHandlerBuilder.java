@@ -19,16 +19,21 @@ import java.lang.reflect.Proxy;
 
 import se.jsa.twyn.internal.TwynContext;
 import se.jsa.twyn.internal.datamodel.Node;
-import se.jsa.twyn.internal.readmodel.ProxiedInterface;
 import se.jsa.twyn.internal.proxy.TwynProxyBuilder;
 
 public class TwynProxyInvocationHandlerBuilder implements TwynProxyBuilder {
-
 	@Override
 	public <T> T buildProxy(Class<T> type, TwynContext twynContext, Node node) {
+		return buildProxy(type, twynContext, node, null);
+	}
+
+	/**
+	 * Builds a proxy that runs invocationListener before every call made to it
+	 */
+	public <T> T buildProxy(Class<T> type, TwynContext twynContext, Node node, Runnable invocationListener) {
 		return type.cast(Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
 				new Class<?>[] { type },
-				new TwynProxyInvocationHandler(node, twynContext, ProxiedInterface.of(type))));
+				new TwynProxyInvocationHandler(node, twynContext, DispatchTable.of(type), invocationListener)));
 	}
 
 	@Override
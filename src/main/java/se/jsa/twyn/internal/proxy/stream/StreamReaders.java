@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.stream;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import se.jsa.twyn.TwynProxy;
+import se.jsa.twyn.internal.proxy.cg.TwynProxyIndex;
+
+/**
+ * Finds the generated streaming reader of a type in the proxy indexes visible from the class loader of the type.
+ */
+public class StreamReaders {
+	private static final ClassValue<TwynStreamReader<?>> READERS = new ClassValue<TwynStreamReader<?>>() {
+		@Override
+		protected TwynStreamReader<?> computeValue(Class<?> type) {
+			try {
+				for (TwynProxyIndex index : ServiceLoader.load(TwynProxyIndex.class, type.getClassLoader())) {
+					TwynStreamReader<?> reader = index.getStreamReaders().get(type);
+					if (reader != null) {
+						return reader;
+					}
+				}
+			} catch (ServiceConfigurationError e) {
+				throw new IllegalArgumentException("Could not load proxy indexes when looking for the streaming reader of " + type.getName(), e);
+			}
+			return null;
+		}
+	};
+
+	private StreamReaders() {
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> TwynStreamReader<T> get(Class<T> type) {
+		TwynStreamReader<T> reader = (TwynStreamReader<T>) READERS.get(type);
+		if (reader == null) {
+			throw new IllegalArgumentException("No streaming reader has been generated for " + type.getName()
+					+ ", annotate it, or the type it is declared in, with @" + TwynProxy.class.getSimpleName() + "(streaming = true)");
+		}
+		return reader;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.stream;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import se.jsa.twyn.BadNodeTypeException;
+
+/**
+ * Token level reads used by generated streaming readers. Scalars are read with the same lenient conversions as
+ * JsonParser.getValueAsInt() and friends, anything that is not a scalar or a generated type is read by the codec of
+ * the parser, which must therefore be created by an ObjectMapper.
+ */
+public class StreamValues {
+
+	private StreamValues() {
+	}
+
+	/**
+	 * @return true if the parser is at the start of an object, false if it is at a json null
+	 */
+	public static boolean startObject(JsonParser parser, String typeName) throws IOException {
+		JsonToken token = currentToken(parser);
+		if (token == JsonToken.VALUE_NULL) {
+			return false;
+		}
+		if (token != JsonToken.START_OBJECT) {
+			throw new BadNodeTypeException("Could not read " + typeName + ", expected an object but found " + token + " at " + parser.getCurrentLocation());
+		}
+		return true;
+	}
+
+	/**
+	 * Advances to the value of the next field of the current object
+	 *
+	 * @return the name of the field or null when the end of the object is reached
+	 */
+	public static String nextField(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.FIELD_NAME) {
+			return null;
+		}
+		String fieldName = parser.getCurrentName();
+		parser.nextToken();
+		return fieldName;
+	}
+
+	public static int readInt(JsonParser parser) throws IOException {
+		return isScalar(parser) ? parser.getValueAsInt() : parser.readValueAs(int.class);
+	}
+
+	public static long readLong(JsonParser parser) throws IOException {
+		return isScalar(parser) ? parser.getValueAsLong() : parser.readValueAs(long.class);
+	}
+
+	public static double readDouble(JsonParser parser) throws IOException {
+		return isScalar(parser) ? parser.getValueAsDouble() : parser.readValueAs(double.class);
+	}
+
+	public static boolean readBoolean(JsonParser parser) throws IOException {
+		return isScalar(parser) ? parser.getValueAsBoolean() : parser.readValueAs(boolean.class);
+	}
+
+	public static Integer readInteger(JsonParser parser) throws IOException {
+		return parser.currentToken() == JsonToken.VALUE_NULL ? null : Integer.valueOf(readInt(parser));
+	}
+
+	public static Long readLongObject(JsonParser parser) throws IOException {
+		return parser.currentToken() == JsonToken.VALUE_NULL ? null : Long.valueOf(readLong(parser));
+	}
+
+	public static Double readDoubleObject(JsonParser parser) throws IOException {
+		return parser.currentToken() == JsonToken.VALUE_NULL ? null : Double.valueOf(readDouble(parser));
+	}
+
+	public static Boolean readBooleanObject(JsonParser parser) throws IOException {
+		return parser.currentToken() == JsonToken.VALUE_NULL ? null : Boolean.valueOf(readBoolean(parser));
+	}
+
+	public static String readString(JsonParser parser) throws IOException {
+		return isScalar(parser) ? parser.getValueAsString() : parser.readValueAs(String.class);
+	}
+
+	public static BigDecimal readBigDecimal(JsonParser parser) throws IOException {
+		switch (parser.currentToken()) {
+			case VALUE_NULL:		return null;
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:	return parser.getDecimalValue();
+			default:				return parser.readValueAs(BigDecimal.class);
+		}
+	}
+
+	public static <T> T readValue(JsonParser parser, TypeReference<T> type) throws IOException {
+		return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.readValueAs(type);
+	}
+
+	/**
+	 * @return the elements of the current array, or an empty list if the array is a json null
+	 */
+	public static <T> List<T> readList(JsonParser parser, TwynStreamReader<T> elementReader) throws IOException {
+		if (!startArray(parser)) {
+			return Collections.emptyList();
+		}
+		List<T> elements = new ArrayList<>();
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			elements.add(elementReader.read(parser));
+		}
+		return Collections.unmodifiableList(elements);
+	}
+
+	public static <T> Set<T> readSet(JsonParser parser, TwynStreamReader<T> elementReader) throws IOException {
+		return Collections.unmodifiableSet(new LinkedHashSet<>(readList(parser, elementReader)));
+	}
+
+	public static <T> Map<String, T> readMap(JsonParser parser, TwynStreamReader<T> valueReader) throws IOException {
+		if (!startObject(parser, "map")) {
+			return Collections.emptyMap();
+		}
+		Map<String, T> values = new LinkedHashMap<>();
+		String fieldName;
+		while ((fieldName = nextField(parser)) != null) {
+			values.put(fieldName, valueReader.read(parser));
+		}
+		return Collections.unmodifiableMap(values);
+	}
+
+	private static boolean startArray(JsonParser parser) throws IOException {
+		JsonToken token = currentToken(parser);
+		if (token == JsonToken.VALUE_NULL) {
+			return false;
+		}
+		if (token != JsonToken.START_ARRAY) {
+			throw new BadNodeTypeException("Expected an array but found " + token + " at " + parser.getCurrentLocation());
+		}
+		return true;
+	}
+
+	private static JsonToken currentToken(JsonParser parser) throws IOException {
+		return parser.currentToken() != null ? parser.currentToken() : parser.nextToken();
+	}
+
+	private static boolean isScalar(JsonParser parser) {
+		return parser.currentToken().isScalarValue();
+	}
+}
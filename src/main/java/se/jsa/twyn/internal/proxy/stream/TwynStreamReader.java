@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.stream;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Reads one value of a type annotated with @TwynProxy(streaming = true) from the tokens of a parser, as generated by
+ * the annotation processor.
+ */
+@FunctionalInterface
+public interface TwynStreamReader<T> {
+	/**
+	 * @param parser positioned before or at the first token of the value, left at its last token
+	 * @return the value or null if it is a json null
+	 */
+	T read(JsonParser parser) throws IOException;
+}
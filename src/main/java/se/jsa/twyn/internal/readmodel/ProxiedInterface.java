@@ -29,11 +29,16 @@ public interface ProxiedInterface {
 	}
 
 	public static ProxiedInterfaceClass of(Class<?> elementClass) {
-		return new ProxiedInterfaceClass(elementClass);
+		return ProxiedInterfaceClass.of(elementClass);
 	}
 
 	String getCanonicalName();
 	String getSimpleName();
+	String getPackageName();
+	/**
+	 * @return the name of the interface as given by Class.getName(), with nested types separated by $
+	 */
+	String getBinaryName();
 	Collection<ImplementedMethod> getMethods();
 
 	@Override int hashCode();
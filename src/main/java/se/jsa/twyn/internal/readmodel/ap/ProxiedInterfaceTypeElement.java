@@ -18,7 +18,9 @@ package se.jsa.twyn.internal.readmodel.ap;
 import java.util.Collection;
 import java.util.stream.Collectors;
 
+import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 
 import se.jsa.twyn.internal.readmodel.ImplementedMethod;
@@ -42,6 +44,27 @@ public class ProxiedInterfaceTypeElement implements ProxiedInterface {
 		return typeElement.getSimpleName().toString();
 	}
 
+	@Override
+	public String getPackageName() {
+		Element element = typeElement;
+		while (!(element instanceof PackageElement)) {
+			element = element.getEnclosingElement();
+		}
+		return ((PackageElement) element).getQualifiedName().toString();
+	}
+
+	@Override
+	public String getBinaryName() {
+		String name = typeElement.getSimpleName().toString();
+		Element element = typeElement.getEnclosingElement();
+		while (element instanceof TypeElement) {
+			name = element.getSimpleName() + "$" + name;
+			element = element.getEnclosingElement();
+		}
+		String packageName = getPackageName();
+		return packageName.isEmpty() ? name : packageName + "." + name;
+	}
+
 	@Override
 	public Collection<ImplementedMethod> getMethods() {
 		return typeElement.getEnclosedElements().stream()
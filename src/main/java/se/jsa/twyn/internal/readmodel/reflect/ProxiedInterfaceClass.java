@@ -16,6 +16,8 @@
 package se.jsa.twyn.internal.readmodel.reflect;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,10 +25,25 @@ import se.jsa.twyn.internal.readmodel.ImplementedMethod;
 import se.jsa.twyn.internal.readmodel.ProxiedInterface;
 
 public class ProxiedInterfaceClass implements ProxiedInterface {
+	private static final ClassValue<ProxiedInterfaceClass> INSTANCES = new ClassValue<ProxiedInterfaceClass>() {
+		@Override
+		protected ProxiedInterfaceClass computeValue(Class<?> type) {
+			return new ProxiedInterfaceClass(type);
+		}
+	};
+
 	private final Class<?> type;
+	private final List<ImplementedMethod> methods;
 
 	public ProxiedInterfaceClass(Class<?> type) {
 		this.type = type;
+		this.methods = Collections.unmodifiableList(Stream.of(type.getMethods())
+				.map(m -> new ImplementedMethodMethod(m))
+				.collect(Collectors.toList()));
+	}
+
+	public static ProxiedInterfaceClass of(Class<?> type) {
+		return INSTANCES.get(type);
 	}
 
 	@Override
@@ -39,11 +56,19 @@ public class ProxiedInterfaceClass implements ProxiedInterface {
 		return type.getSimpleName();
 	}
 
+	@Override
+	public String getPackageName() {
+		return type.getPackageName();
+	}
+
+	@Override
+	public String getBinaryName() {
+		return type.getName();
+	}
+
 	@Override
 	public Collection<ImplementedMethod> getMethods() {
-		return Stream.of(type.getMethods())
-				.map(m -> new ImplementedMethodMethod(m))
-				.collect(Collectors.toList());
+		return methods;
 	}
 
 	@Override
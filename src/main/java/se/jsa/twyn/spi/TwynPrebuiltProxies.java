@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.spi;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Map;
+
+import se.jsa.twyn.internal.proxy.cg.TwynProxySources;
+
+/**
+ * Prebuilt proxies for interfaces that cannot be annotated with @TwynProxy, for build tools such as the
+ * twyn-maven-plugin to compile and register ahead of time.
+ */
+public final class TwynPrebuiltProxies {
+	/**
+	 * The service file, relative to the class output, that the index class must be listed in
+	 */
+	public static final String SERVICE_FILE = TwynProxySources.SERVICE_FILE;
+
+	private final TwynProxySources sources;
+
+	private TwynPrebuiltProxies(TwynProxySources sources) {
+		this.sources = sources;
+	}
+
+	/**
+	 * Generates proxies for the given interfaces and every interface reachable from them.
+	 */
+	public static TwynPrebuiltProxies generate(Collection<? extends Class<?>> roots) throws IOException, URISyntaxException {
+		return new TwynPrebuiltProxies(TwynProxySources.generate(roots));
+	}
+
+	/**
+	 * @return java source code by the binary name of the class it declares
+	 */
+	public Map<String, String> getSources() {
+		return sources.getSources();
+	}
+
+	/**
+	 * @return the index class to list in {@link #SERVICE_FILE}
+	 */
+	public String getIndexClassName() {
+		return sources.getIndexClassName();
+	}
+}
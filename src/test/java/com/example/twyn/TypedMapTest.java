@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.twyn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import se.jsa.twyn.Twyn;
+
+public class TypedMapTest {
+
+	@Test
+	public void generatedClassesReadMapsWithTypedKeysOutsideTwynPackage() throws Exception {
+		TypedMap typedMap = Twyn.configurer().withClassGeneration().configure()
+				.read("{ \"data\": { \"k\": { \"name\": \"v\" } } }", TypedMap.class);
+
+		assertEquals("com.example.twyn.TypedMapTest$TypedMapTwynImpl", typedMap.getClass().getName());
+		assertEquals("v", typedMap.data().get(new Key("k")).name());
+	}
+
+	public interface TypedMap {
+		Map<Key, Named> data();
+	}
+
+	public interface Named {
+		String name();
+	}
+
+	public static class Key {
+		private final String key;
+
+		public Key(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).key.equals(key);
+		}
+	}
+
+}
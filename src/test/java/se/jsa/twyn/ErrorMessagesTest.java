@@ -42,7 +42,11 @@ public class ErrorMessagesTest {
 	public static Collection<Object[]> twyns() {
 		return Arrays.<Object[]>asList(
 				new Object[] { Twyn.configurer().withJavaProxies().configure() },
-				new Object[] { Twyn.configurer().withClassGeneration().configure() }
+				new Object[] { Twyn.configurer().withClassGeneration().configure() },
+				new Object[] { Twyn.configurer().withTieredGeneration(1).configure() },
+				new Object[] { Twyn.configurer().withJavaProxies().withProjectionParsing().configure() },
+				new Object[] { Twyn.configurer().withJavaProxies().withLazyParsing().configure() },
+				new Object[] { Twyn.configurer().withJavaProxies().withCompactNodes().configure() }
 				);
 	}
 
@@ -122,6 +126,17 @@ public class ErrorMessagesTest {
 		twyn.read("{ \"persons\": \"oh.\" }", TypedPersonMap.class).persons();
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void reachableInterfacesOfPrecompiledTypesAreValidatedWhenConfigured() throws Exception {
+		Twyn.configurer().withClassGeneration().withPrecompiledClasses(Arrays.asList(HoldsBroken.class)).configure();
+	}
+	public interface HoldsBroken {
+		List<Broken> broken();
+	}
+	public interface Broken {
+		String type(String param, int i);
+	}
+
 	@Test(expected = BadNodeTypeException.class)
 	public void directArray() throws Exception {
 		twyn.read("{ \"persons\": \"oh.\" }", Person[].class)[0].name();
@@ -24,6 +24,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -43,12 +47,30 @@ public class TwynTest {
 		return Arrays.<Object[]>asList(
 				new Object[] { "Java proxies", Twyn.configurer().withJavaProxies().withDebugMode().configure() },
 				new Object[] { "Java proxies, full caching", Twyn.configurer().withJavaProxies().withFullCaching().withDebugMode().configure() },
+				new Object[] { "Java proxies, full concurrent caching", Twyn.configurer().withJavaProxies().withFullConcurrentCaching().withDebugMode().configure() },
+				new Object[] { "Java proxies, bounded caching", Twyn.configurer().withJavaProxies().withBoundedCaching(4).withDebugMode().configure() },
 				new Object[] { "Code Generation", Twyn.configurer().withClassGeneration()
 						.withPrecompiledClasses(getInterfaces())
 						.withDebugMode().configure() },
 				new Object[] { "Code Generation, full caching", Twyn.configurer().withClassGeneration()
 						.withPrecompiledClasses(getInterfaces())
-						.withFullCaching().withDebugMode().configure() }
+						.withFullCaching().withDebugMode().configure() },
+				new Object[] { "Code Generation, full concurrent caching", Twyn.configurer().withClassGeneration()
+						.withPrecompiledClasses(getInterfaces())
+						.withFullConcurrentCaching().withDebugMode().configure() },
+				new Object[] { "Tiered Generation", Twyn.configurer().withTieredGeneration(1)
+						.withDebugMode().configure() },
+				new Object[] { "Java proxies, projection parsing", Twyn.configurer().withJavaProxies().withProjectionParsing().withDebugMode().configure() },
+				new Object[] { "Code Generation, projection parsing", Twyn.configurer().withClassGeneration()
+						.withPrecompiledClasses(getInterfaces())
+						.withProjectionParsing().withDebugMode().configure() },
+				new Object[] { "Java proxies, lazy parsing", Twyn.configurer().withJavaProxies().withLazyParsing().withDebugMode().configure() },
+				new Object[] { "Java proxies, lazy parsing, full caching", Twyn.configurer().withJavaProxies()
+						.withLazyParsing().withFullCaching().withDebugMode().configure() },
+				new Object[] { "Java proxies, compact nodes", Twyn.configurer().withJavaProxies().withCompactNodes().withDebugMode().configure() },
+				new Object[] { "Code Generation, compact nodes, projection parsing", Twyn.configurer().withClassGeneration()
+						.withPrecompiledClasses(getInterfaces())
+						.withCompactNodes().withProjectionParsing().withDebugMode().configure() }
 		);
 	}
 
@@ -65,6 +87,30 @@ public class TwynTest {
 		StringIF string = twyn.read(input("{ \"name\" : \"Hello World!\" }"), StringIF.class);
 		assertEquals("Hello World!", string.getName());
 	}
+
+	@Test
+	public void canReadByteBuffers() throws Exception {
+		byte[] json = "xx{ \"name\" : \"Hello World!\" }".getBytes(StandardCharsets.UTF_8);
+		ByteBuffer heap = ByteBuffer.wrap(json, 2, json.length - 2).slice();
+		ByteBuffer direct = ByteBuffer.allocateDirect(json.length - 2).put(json, 2, json.length - 2);
+		direct.flip();
+		ByteBuffer[] split = { ByteBuffer.wrap(json, 2, 10), ByteBuffer.allocate(0), ByteBuffer.wrap(json, 12, json.length - 12) };
+
+		assertEquals("Hello World!", twyn.read(heap, StringIF.class).getName());
+		assertEquals("Hello World!", twyn.read(direct, StringIF.class).getName());
+		assertEquals("Hello World!", twyn.read(split, StringIF.class).getName());
+		assertEquals(2, split[0].position());
+		assertEquals(0, direct.position());
+	}
+
+	@Test
+	public void canReadMappedFile() throws Exception {
+		Path file = Files.createTempFile("twyn", ".json");
+		file.toFile().deleteOnExit();
+		Files.write(file, "{ \"name\" : \"Hello World!\" }".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals("Hello World!", twyn.read(file, StringIF.class).getName());
+	}
 	public static interface StringIF { String getName(); };
 
 	@Test
@@ -85,6 +131,25 @@ public class TwynTest {
 		assertEquals(1000000000000L, types.getL());
 		assertEquals(Long.valueOf(1000000000001L), types.getLong());
 	}
+	@Test
+	public void canReadNativeJsonScalars() throws Exception {
+		TypesIF types = twyn.read(input(
+				"{ "
+				+ "\"i\" : 1, \"integer\" : null, "
+				+ "\"b\" : true, \"boolean\" : null, "
+				+ "\"d\" : 3, \"double\" : 1.5, "
+				+ "\"l\" : 2, \"long\" : 1000000000001 "
+				+ "}"), TypesIF.class);
+		assertEquals(1, types.getI());
+		assertNull(types.getInteger());
+		assertEquals(true, types.getB());
+		assertNull(types.getBoolean());
+		assertEquals(3.0, types.getD(), 0.001);
+		assertEquals(Double.valueOf(1.5), types.getDouble());
+		assertEquals(2L, types.getL());
+		assertEquals(Long.valueOf(1000000000001L), types.getLong());
+	}
+
 	public static interface TypesIF {
 		int getI();
 		Integer getInteger();
@@ -213,6 +278,22 @@ public class TwynTest {
 		}
 	}
 
+	@Test
+	public void defaultMethodsCanHaveManyParameters() throws Exception {
+		DefaultManyParamsMethodIF defaultMethod = twyn.read(input("{ \"name\" : \"Java8\" }"), DefaultManyParamsMethodIF.class);
+		assertEquals("Java8-2", defaultMethod.decorate("-", 2));
+		assertEquals("a/Java8/b/c/3", defaultMethod.decorate("a", "b", "c", 3));
+	}
+	public static interface DefaultManyParamsMethodIF {
+		String getName();
+		default String decorate(String separator, int count) {
+			return getName() + separator + count;
+		}
+		default String decorate(String first, String second, String third, int count) {
+			return first + "/" + getName() + "/" + second + "/" + third + "/" + count;
+		}
+	}
+
 	@Test
 	public void canMapWithStringKeys() throws Exception {
 		MapIF maps = twyn.read("{ \"data\" : { \"k1\" : { \"name\" : \"s1!\" },  \"k2\" : { \"name\" : \"s2?\" }, \"k3\" : { \"name\" : \"s3#\" } } }", MapIF.class);
@@ -389,6 +470,37 @@ public class TwynTest {
 		assertEquals(e3.hashCode(), twyn.read("{ \"name\" : \"n1\", \"type\" : \"t2\" }", ReferenceEntity.class).hashCode());
 	}
 
+	@Test
+	public void hashCodeFollowsSetValues() throws Exception {
+		SettableReferenceEntity e1 = twyn.read("{ \"name\" : \"n1\" }", SettableReferenceEntity.class);
+		SettableReferenceEntity e2 = twyn.read("{ \"name\" : \"n2\" }", SettableReferenceEntity.class);
+		assertNotEquals(e1.hashCode(), e2.hashCode());
+		assertNotEquals(e1, e2);
+
+		e2.setName("n1");
+		assertEquals(e1.hashCode(), e2.hashCode());
+		assertEquals(e1, e2);
+	}
+	@Test
+	public void hashCodeFollowsValuesSetThroughNestedProxies() throws Exception {
+		OuterEntity outer = twyn.read("{ \"inner\" : { \"name\" : \"a\" } }", OuterEntity.class);
+		int before = outer.hashCode();
+		outer.getInner().setName("b");
+
+		OuterEntity expected = twyn.read("{ \"inner\" : { \"name\" : \"b\" } }", OuterEntity.class);
+		assertEquals(expected, outer);
+		assertEquals(expected.hashCode(), outer.hashCode());
+		assertNotEquals(before, outer.hashCode());
+	}
+	public static interface OuterEntity {
+		SettableReferenceEntity getInner();
+	}
+	public static interface SettableReferenceEntity {
+		@IdField
+		String getName();
+		void setName(String name);
+	}
+
 	@Test
 	public void canReadComplexSet() throws Exception {
 		SetIF complexArray = twyn.read("{ \"strings\" : [ { \"name\" : \"s1!\" }, { \"name\" : \"s2?\" }, { \"name\" : \"s1!\" } ] }", SetIF.class);
@@ -414,6 +526,25 @@ public class TwynTest {
 		twyn.read(inputStream, ReferenceEntity.class);
 	}
 
+	@Test
+	public void throwsNullPointerExceptionForMissingPrimitives() throws Exception {
+		MissingPrimitives missing = twyn.read("{ }", MissingPrimitives.class);
+		assertThrows(NullPointerException.class, missing::count);
+		assertThrows(NullPointerException.class, missing::total);
+		assertThrows(NullPointerException.class, missing::ratio);
+		assertThrows(NullPointerException.class, missing::active);
+		assertThrows(NullPointerException.class, missing::small);
+		assertNull(missing.boxedCount());
+	}
+	public static interface MissingPrimitives {
+		int count();
+		long total();
+		double ratio();
+		boolean active();
+		short small();
+		Integer boxedCount();
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void throwsIllegalArgumentExceptionIfUnableToCreateProxy() throws Exception {
 		twyn.read("{ \"name\" : \"n1\", \"type\" : \"test\" }", InterfaceWithNonDefaultMethodWithParameters.class);
@@ -735,6 +866,14 @@ public class TwynTest {
 		read.set("notFound!");
 		assertEquals("notFound!", read.get());
 	}
+	@Test
+	public void setWithResolveReplacesReadValue() throws Exception {
+		SetResolvable read = twyn.read("{ \"toResolve\": { \"resolveMe\": \"found!\" } }", SetResolvable.class);
+		assertEquals("found!", read.get());
+		read.set("replaced!");
+		assertEquals("replaced!", read.get());
+	}
+
 	public interface SetResolvable {
 		@Resolve("toResolve.resolveMe")
 		void set(String value);
@@ -742,6 +881,22 @@ public class TwynTest {
 		String get();
 	}
 
+	@Test
+	public void gettersOfSameNodeWithDifferentTypesAreCachedSeparately() throws Exception {
+		SharedNode read = twyn.read("{ \"value\": \"found!\" }", SharedNode.class);
+		assertEquals("found!", read.value());
+		assertEquals(Optional.of("found!"), read.maybeValue());
+		read.setValue("replaced!");
+		assertEquals(Optional.of("replaced!"), read.maybeValue());
+		assertEquals("replaced!", read.value());
+	}
+	public interface SharedNode {
+		String value();
+		@Resolve("value")
+		Optional<String> maybeValue();
+		void setValue(String value);
+	}
+
 	@Test
 	public void canSetComplexResolvable() throws Exception {
 		SetComplexResolvable read = twyn.read("{ \"level1\": { \"level2\": { \"level3\": { \"val\": \"1\" } } } }", SetComplexResolvable.class);
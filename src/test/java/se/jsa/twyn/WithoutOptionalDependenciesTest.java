@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Runs in a test execution of its own, with the optional compilation-toolbox dependency left off the classpath.
+ */
+public class WithoutOptionalDependenciesTest {
+
+	private static final String JSON = "{ \"name\": \"Anna\", \"children\": [ { \"name\": \"Bo\" } ] }";
+
+	@Test
+	public void compilationToolboxIsNotOnTheClasspath() throws Exception {
+		assertThrows(ClassNotFoundException.class, () -> Class.forName("org.abstractmeta.toolbox.compilation.compiler.JavaSourceCompiler"));
+	}
+
+	@Test
+	public void canUseJavaProxies() throws Exception {
+		assertRead(Twyn.configurer().withJavaProxies().configure());
+		assertRead(Twyn.configurer().withJavaProxies().withFullConcurrentCaching().withLazyParsing().configure());
+		assertRead(Twyn.configurer().withJavaProxies().withBoundedCaching(10).withProjectionParsing().configure());
+	}
+
+	private static void assertRead(Twyn twyn) throws Exception {
+		Parent parent = twyn.read(JSON, Parent.class);
+		assertEquals("Anna", parent.name());
+		assertEquals("Bo", parent.children().get(0).name());
+	}
+
+	public interface Parent {
+		String name();
+		List<Child> children();
+	}
+
+	public interface Child {
+		String name();
+	}
+
+}
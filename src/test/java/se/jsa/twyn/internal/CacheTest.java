@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.Test;
+
+public class CacheTest {
+
+	@Test
+	public void fullCacheComputesOnceUntilCleared() throws Exception {
+		Cache cache = new Cache.Full(2);
+		AtomicInteger calls = new AtomicInteger();
+		assertEquals(1, (int) cache.get(1, calls::incrementAndGet));
+		assertEquals(1, (int) cache.get(1, calls::incrementAndGet));
+		cache.clear(1);
+		assertEquals(2, (int) cache.get(1, calls::incrementAndGet));
+		assertNull(cache.get(0, () -> null));
+		assertNull(cache.get(0, () -> "not called"));
+	}
+
+	@Test
+	public void fullConcurrentCacheComputesEachValueOnce() throws Exception {
+		Cache cache = new Cache.FullConcurrent(1);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch computing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<>();
+			results.add(executor.submit(() -> cache.get(0, () -> {
+				computing.countDown();
+				await(release);
+				return calls.incrementAndGet();
+			})));
+			await(computing);
+			for (int i = 0; i < 7; i++) {
+				results.add(executor.submit(() -> cache.get(0, calls::incrementAndGet)));
+			}
+			release.countDown();
+			for (Future<Object> result : results) {
+				assertEquals(1, result.get(10, TimeUnit.SECONDS));
+			}
+			assertEquals(1, calls.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void fullConcurrentCacheReleasesSlotWhenComputationFails() throws Exception {
+		Cache cache = new Cache.FullConcurrent(1);
+		try {
+			cache.get(0, () -> { throw new IllegalStateException("failed"); });
+			fail("expected the computation to fail");
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		assertEquals("ok", cache.get(0, () -> "ok"));
+	}
+
+	@Test
+	public void fullConcurrentCacheDoesNotPublishValueClearedWhileComputing() throws Exception {
+		Cache cache = new Cache.FullConcurrent(1);
+		assertEquals("stale", cache.get(0, () -> {
+			cache.clear(0);
+			return "stale";
+		}));
+		assertEquals("fresh", cache.get(0, () -> "fresh"));
+	}
+
+	@Test
+	public void boundedCachesShareEntryBudget() throws Exception {
+		IntFunction<Cache> factory = Cache.Bounded.factory(2, false);
+		Cache first = factory.apply(2);
+		Cache second = factory.apply(1);
+		AtomicInteger calls = new AtomicInteger();
+		assertEquals(1, (int) first.get(0, calls::incrementAndGet));
+		assertEquals(2, (int) first.get(1, calls::incrementAndGet));
+		assertEquals(1, (int) first.get(0, calls::incrementAndGet));
+		assertEquals(3, (int) second.get(0, calls::incrementAndGet));
+		assertEquals(3, (int) second.get(0, calls::incrementAndGet));
+		assertEquals(3, calls.get());
+		assertEquals(4, (int) first.get(1, calls::incrementAndGet));
+	}
+
+	@Test
+	public void boundedCacheRecomputesClearedValue() throws Exception {
+		Cache cache = Cache.Bounded.factory(1, true).apply(1);
+		assertEquals("first", cache.get(0, () -> "first"));
+		assertEquals("first", cache.get(0, () -> "second"));
+		cache.clear(0);
+		assertEquals("second", cache.get(0, () -> "second"));
+	}
+
+	@Test
+	public void boundedCacheDoesNotRetainValuesOfCollectedCaches() throws Exception {
+		IntFunction<Cache> factory = Cache.Bounded.factory(1, false);
+		WeakReference<Object> value = cacheValue(factory.apply(1));
+		for (int i = 0; value.get() != null && i < 100; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(value.get());
+	}
+
+	private static WeakReference<Object> cacheValue(Cache cache) {
+		Object value = new Object();
+		cache.get(0, () -> value);
+		return new WeakReference<>(value);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
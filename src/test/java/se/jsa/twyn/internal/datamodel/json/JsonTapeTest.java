@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.datamodel.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import se.jsa.twyn.internal.datamodel.CollectionNode;
+import se.jsa.twyn.internal.datamodel.ContainerNode;
+import se.jsa.twyn.internal.datamodel.NodeProducer;
+
+public class JsonTapeTest {
+	private static final String JSON = "{ \"s\": \"tëxt\", \"i\": -7, \"l\": 12345678901, \"d\": 0.25, \"big\": 123456789012345678901234567890,"
+			+ " \"b\": [ true, false, null ], \"o\": { \"dup\": 1, \"empty\": {}, \"dup\": [] } }";
+
+	@Test
+	public void tapesDecodeToTheTreeTheObjectMapperParses() throws Exception {
+		assertDecodesAsParsed(new ObjectMapper());
+		assertDecodesAsParsed(new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, DeserializationFeature.USE_BIG_INTEGER_FOR_INTS));
+	}
+
+	private void assertDecodesAsParsed(ObjectMapper objectMapper) throws Exception {
+		JsonNode parsed = objectMapper.readTree(JSON);
+		JsonNode decoded = TwynJsonNode.jsonNodeOf(new TwynJsonNodeProducer(objectMapper).withCompactNodes().read(JSON, Object.class));
+
+		assertEquals(parsed, decoded);
+		assertEquals(parsed.get("i").getClass(), decoded.get("i").getClass());
+		assertEquals(parsed.get("d").getClass(), decoded.get("d").getClass());
+	}
+
+	@Test
+	public void valuesAreReadFromTheTape() throws Exception {
+		NodeProducer nodeProducer = new TwynJsonNodeProducer(new ObjectMapper()).withCompactNodes();
+		ContainerNode root = (ContainerNode) nodeProducer.read(JSON, Object.class);
+
+		assertEquals("tëxt", nodeProducer.readNode(root.get("s"), String.class));
+		assertEquals(-7, nodeProducer.readInt(root.get("i")));
+		assertEquals(12345678901L, nodeProducer.readLong(root.get("l")));
+		assertEquals(new BigDecimal("0.25"), nodeProducer.readNode(root.get("d"), BigDecimal.class));
+		assertEquals(false, nodeProducer.readBoolean(((CollectionNode) root.get("b")).get(1)));
+		assertNull(((CollectionNode) root.get("b")).get(3));
+		assertEquals("[]", ((ContainerNode) root.get("o")).get("dup").toString());
+	}
+
+	@Test
+	public void modificationsAreVisibleThroughAllNodes() throws Exception {
+		NodeProducer nodeProducer = new TwynJsonNodeProducer(new ObjectMapper()).withCompactNodes();
+		ContainerNode root = (ContainerNode) nodeProducer.read(JSON, Object.class);
+		ContainerNode o = (ContainerNode) root.get("o");
+
+		root.set("s", "changed");
+		o.set("added", 3);
+
+		assertEquals("changed", nodeProducer.readNode(root.get("s"), String.class));
+		assertEquals(3, nodeProducer.readInt(((ContainerNode) root.get("o")).get("added")));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.datamodel.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import se.jsa.twyn.ReadException;
+import se.jsa.twyn.internal.datamodel.CollectionNode;
+import se.jsa.twyn.internal.datamodel.ContainerNode;
+import se.jsa.twyn.internal.datamodel.Node;
+
+public class LazyJsonNodeTest {
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final TwynJsonNodeProducer nodeProducer = (TwynJsonNodeProducer) new TwynJsonNodeProducer(objectMapper).withLazyNodes();
+
+	@Test
+	public void nodesAreLocatedAsInTheParsedTree() throws Exception {
+		String json = "{ \"skip\": { \"a\": [1, \"}]\\\"\", {}] }, \"k\\u00e9y\": \"esc\", \"käy\": 7, \"dup\": 1,"
+				+ " \"list\": [ true, null, 12345678901, 1.5, \"s\\n\" ], \"dup\": 2 }";
+		ContainerNode root = (ContainerNode) nodeProducer.read(json, Object.class);
+
+		assertEquals("esc", nodeProducer.readNode(root.get("kéy"), String.class));
+		assertEquals(7, nodeProducer.readInt(root.get("käy")));
+		assertEquals(2, nodeProducer.readInt(root.get("dup")));
+		CollectionNode list = (CollectionNode) root.get("list");
+		assertTrue(list.isCollection());
+		assertEquals(true, nodeProducer.readBoolean(list.get(0)));
+		assertEquals(12345678901L, nodeProducer.readLong(list.get(2)));
+		assertEquals(1.5, nodeProducer.readDouble(list.get(3)), 0.0);
+		assertEquals("s\n", nodeProducer.readNode(list.get(4), String.class));
+		assertNull(list.get(5));
+		assertNull(root.get("missing"));
+		assertEquals(objectMapper.readTree(json), objectMapper.readTree(root.toString()));
+		assertEquals("skip, kéy, käy, dup, list", root.streamFields().map(Map.Entry::getKey).collect(Collectors.joining(", ")));
+	}
+
+	@Test
+	public void largeAndSmallContainersAreBothLocated() throws Exception {
+		StringBuilder json = new StringBuilder("{ \"large\": [");
+		for (int i = 0; json.length() < 2 * LazyJsonDocument.INDEXED_SPAN; i++) {
+			json.append(i == 0 ? "" : ", ").append("{ \"i\": ").append(i).append(", \"s\": \"]}\\\"\" }");
+		}
+		json.append("], \"after\": { \"small\": [ \"x\" ] } }");
+		ContainerNode root = (ContainerNode) nodeProducer.read(json.toString(), Object.class);
+
+		CollectionNode large = (CollectionNode) root.get("large");
+		assertEquals(1000, nodeProducer.readInt(((ContainerNode) large.get(1000)).get("i")));
+		assertEquals("]}\"", nodeProducer.readNode(((ContainerNode) large.get(1000)).get("s"), String.class));
+		assertEquals("x", nodeProducer.readNode(((CollectionNode) ((ContainerNode) root.get("after")).get("small")).get(0), String.class));
+	}
+
+	@Test
+	public void modificationsAreSharedByAllNodesOfTheDocument() throws Exception {
+		ContainerNode root = (ContainerNode) nodeProducer.read("{ \"a\": { \"b\": 1 }, \"c\": [ 1, 2 ] }", Object.class);
+		ContainerNode a = (ContainerNode) root.get("a");
+		Node c = root.get("c");
+
+		a.set("b", 2);
+
+		assertEquals(2, nodeProducer.readInt(((ContainerNode) root.get("a")).get("b")));
+		assertEquals(objectMapper.readTree("{ \"a\": { \"b\": 2 }, \"c\": [ 1, 2 ] }"), objectMapper.readTree(root.toString()));
+		assertEquals(2, nodeProducer.readInt(((CollectionNode) c).get(1)));
+	}
+
+	@Test
+	public void mappedFilesAreReadAcrossSegments() throws Exception {
+		String json = "{ \"name\": \"mäpped\", \"values\": [ 1, { \"deep\": \"x\\ty\" }, 12345678901234567890 ] }";
+		Path file = Files.createTempFile("twyn", ".json");
+		file.toFile().deleteOnExit();
+		Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+
+		ContainerNode root = LazyJsonNode.root(new LazyJsonDocument(JsonBytes.map(file, 5), objectMapper));
+
+		assertEquals("mäpped", nodeProducer.readNode(root.get("name"), String.class));
+		assertEquals("x\ty", nodeProducer.readNode(((ContainerNode) ((CollectionNode) root.get("values")).get(1)).get("deep"), String.class));
+		assertEquals(objectMapper.readTree(json), objectMapper.readTree(root.toString()));
+	}
+
+	@Test(expected = ReadException.class)
+	public void malformedDocumentsFailWhenRead() throws Exception {
+		nodeProducer.read("{ \"a\": [ 1, 2 } ", Object.class);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import se.jsa.twyn.internal.Cache;
+import se.jsa.twyn.internal.TwynContext;
+import se.jsa.twyn.internal.datamodel.Node;
+import se.jsa.twyn.internal.datamodel.json.TwynJsonNode;
+import se.jsa.twyn.internal.datamodel.json.TwynJsonNodeProducer;
+import se.jsa.twyn.internal.proxy.cg.TwynProxyClassBuilder;
+
+public class TwynTieredProxyBuilderTest {
+
+	private final List<Runnable> scheduled = new ArrayList<>();
+	private final TwynTieredProxyBuilder builder = new TwynTieredProxyBuilder(2, new TwynProxyClassBuilder(), scheduled::add);
+	private final TwynContext twynContext = new TwynContext(new TwynJsonNodeProducer(new ObjectMapper()), builder, size -> new Cache.None(), false);
+
+	@Test
+	public void typesArePromotedOnceThresholdIsReached() throws Exception {
+		assertTrue(Proxy.isProxyClass(read().getClass()));
+		assertTrue(scheduled.isEmpty());
+		assertTrue(Proxy.isProxyClass(read().getClass()));
+		assertEquals(1, scheduled.size());
+		assertTrue(Proxy.isProxyClass(read().getClass()));
+
+		scheduled.get(0).run();
+		NameIF promoted = read();
+		assertFalse(Proxy.isProxyClass(promoted.getClass()));
+		assertEquals("tiered", promoted.getName());
+		assertEquals(1, scheduled.size());
+	}
+
+	@Test
+	public void typesArePromotedOnceThresholdIsReachedByCalls() throws Exception {
+		NameIF interpreted = read();
+		assertEquals("tiered", interpreted.getName());
+		assertTrue(scheduled.isEmpty());
+		assertEquals("tiered", interpreted.getName());
+		assertEquals(1, scheduled.size());
+		assertEquals("tiered", interpreted.getName());
+		read();
+		assertEquals(1, scheduled.size());
+
+		scheduled.get(0).run();
+		assertFalse(Proxy.isProxyClass(read().getClass()));
+		assertEquals("tiered", interpreted.getName());
+	}
+
+	@Test
+	public void proxiesOfDifferentTiersAreEqual() throws Exception {
+		NameIF interpreted = read();
+		read();
+		scheduled.get(0).run();
+		NameIF compiled = read();
+		assertEquals(interpreted, compiled);
+		assertEquals(compiled, interpreted);
+		assertEquals(interpreted.hashCode(), compiled.hashCode());
+	}
+
+	@Test
+	public void precompiledTypesAreNotInterpreted() throws Exception {
+		builder.precompile(Collections.singleton(NameIF.class), twynContext);
+		assertFalse(Proxy.isProxyClass(read().getClass()));
+		assertTrue(scheduled.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void thresholdMustBePositive() throws Exception {
+		new TwynTieredProxyBuilder(0, new TwynProxyClassBuilder());
+	}
+
+	private NameIF read() throws Exception {
+		Node node = TwynJsonNode.create(new ObjectMapper().readTree("{ \"name\" : \"tiered\" }"));
+		return builder.buildProxy(NameIF.class, twynContext, node);
+	}
+	public static interface NameIF { String getName(); }
+
+}
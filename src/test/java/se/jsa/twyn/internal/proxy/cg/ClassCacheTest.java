@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.cg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import se.jsa.twyn.internal.Cache;
+import se.jsa.twyn.internal.TwynContext;
+import se.jsa.twyn.internal.datamodel.json.TwynJsonNode;
+import se.jsa.twyn.internal.datamodel.json.TwynJsonNodeProducer;
+import se.jsa.twyn.internal.proxy.common.ProxyClassLoader;
+import se.jsa.twyn.internal.readmodel.ProxiedInterface;
+
+public class ClassCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void compiledClassesAreStoredAndReused() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		assertEquals("cached", read(new TwynProxyClassBuilder(directory)).getName());
+		assertEquals(1, entries(directory).size());
+
+		TwynProxyClassBuilder cachedBuilder = new TwynProxyClassBuilder(directory);
+		CachedIF cached = read(cachedBuilder);
+		assertEquals("cached", cached.getName());
+		assertTrue(cached.getClass().getClassLoader() instanceof ProxyClassLoader);
+	}
+	public static interface CachedIF { String getName(); }
+
+	@Test
+	public void classesCompiledTogetherAreLoadedTogether() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		TwynProxyClassBuilder builder = new TwynProxyClassBuilder(directory);
+		builder.precompile(Collections.singleton(CachedOuterIF.class), context(builder));
+		assertEquals(2, entries(directory).size());
+
+		TwynProxyClassBuilder cachedBuilder = new TwynProxyClassBuilder(directory);
+		CachedOuterIF outer = cachedBuilder.buildProxy(CachedOuterIF.class, context(cachedBuilder), TwynJsonNode.create(new ObjectMapper().readTree("{ \"cached\" : { \"name\" : \"nested\" } }")));
+		assertTrue(outer.getClass().getClassLoader() instanceof ProxyClassLoader);
+		assertSame(outer.getClass().getClassLoader(), outer.getCached().getClass().getClassLoader());
+		assertEquals("nested", outer.getCached().getName());
+	}
+	public static interface CachedOuterIF { CachedIF getCached(); }
+
+	@Test
+	public void staleEntriesAreRemoved() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Path staleEntry = Files.createDirectories(directory.resolve(TwynProxyClassJavaFile.generateClassName(ProxiedInterface.of(CachedIF.class)) + "-0123456789abcdef"));
+		read(new TwynProxyClassBuilder(directory));
+		assertFalse(Files.exists(staleEntry));
+		assertEquals(1, entries(directory).size());
+	}
+
+	@Test
+	public void unusableEntriesAreCompiledAgain() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		read(new TwynProxyClassBuilder(directory));
+		try (Stream<Path> files = Files.walk(entries(directory).get(0))) {
+			for (Path classFile : files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList())) {
+				Files.write(classFile, new byte[] { 1, 2, 3 });
+			}
+		}
+
+		CachedIF recompiled = read(new TwynProxyClassBuilder(directory));
+		assertEquals("cached", recompiled.getName());
+		assertFalse(recompiled.getClass().getClassLoader() instanceof ProxyClassLoader);
+		assertEquals(1, entries(directory).size());
+	}
+
+	private static CachedIF read(TwynProxyClassBuilder builder) throws Exception {
+		return builder.buildProxy(CachedIF.class, context(builder), TwynJsonNode.create(new ObjectMapper().readTree("{ \"name\" : \"cached\" }")));
+	}
+
+	private static TwynContext context(TwynProxyClassBuilder builder) {
+		return new TwynContext(new TwynJsonNodeProducer(new ObjectMapper()), builder, size -> new Cache.None(), false);
+	}
+
+	private static List<Path> entries(Path directory) throws Exception {
+		try (Stream<Path> entries = Files.list(directory)) {
+			return entries.collect(Collectors.toList());
+		}
+	}
+
+}
@@ -15,7 +15,184 @@
  */
 package se.jsa.twyn.internal.proxy.cg;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import se.jsa.twyn.Twyn;
+
 public class TwynProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void generatedClassesAreIndexedUnderUniqueNames() throws Exception {
+		Path sources = folder.newFolder("sources").toPath();
+		Path classes = folder.newFolder("classes").toPath();
+		Path first = writeSource(sources, "a", "First");
+		Path second = writeSource(sources, "b", "Second");
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		int result = compiler.run(null, null, null,
+				"-classpath", System.getProperty("java.class.path"),
+				"-processor", TwynProcessor.class.getName(),
+				"-d", classes.toString(),
+				first.toString(), second.toString());
+		assertEquals(0, result);
+		assertTrue(Files.exists(classes.resolve("META-INF/services/" + TwynProxyIndex.class.getName())));
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, getClass().getClassLoader())) {
+			Map<Class<?>, Class<?>> proxyClasses = new HashMap<>();
+			ServiceLoader.load(TwynProxyIndex.class, classLoader).forEach(index -> proxyClasses.putAll(index.getProxyClasses()));
+			assertEquals(4, proxyClasses.size());
+			assertEquals("a.First$AddressTwynImpl", proxyClasses.get(classLoader.loadClass("a.First$Address")).getName());
+			assertEquals("b.Second$AddressTwynImpl", proxyClasses.get(classLoader.loadClass("b.Second$Address")).getName());
+		}
+	}
+
+	@Test
+	public void streamedTypesAreReadStraightFromTokens() throws Exception {
+		Path sources = folder.newFolder("sources").toPath();
+		Path classes = folder.newFolder("classes").toPath();
+		Path source = Files.createDirectories(sources.resolve("c")).resolve("Person.java");
+		Files.write(source, ("package c;\n"
+				+ "@se.jsa.twyn.TwynProxy(streaming = true)\n"
+				+ "public interface Person {\n"
+				+ "	String name();\n"
+				+ "	int age();\n"
+				+ "	Address address();\n"
+				+ "	java.util.List<String> nicknames();\n"
+				+ "	java.util.Map<String, Address> homes();\n"
+				+ "	java.util.Optional<Integer> height();\n"
+				+ "	public interface Address {\n"
+				+ "		String street();\n"
+				+ "	}\n"
+				+ "}\n").getBytes(StandardCharsets.UTF_8));
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		int result = compiler.run(null, null, null,
+				"-classpath", System.getProperty("java.class.path"),
+				"-processor", TwynProcessor.class.getName(),
+				"-d", classes.toString(),
+				source.toString());
+		assertEquals(0, result);
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, getClass().getClassLoader())) {
+			Class<?> personType = classLoader.loadClass("c.Person");
+			String json = "{ \"name\": \"Anna\", \"unknown\": { \"deep\": [1, 2, { \"a\": null }] }, \"age\": 42, "
+					+ "\"address\": { \"street\": \"Storgatan\" }, \"nicknames\": [\"A\", \"Ann\"], "
+					+ "\"homes\": { \"summer\": { \"street\": \"Strandv\u00e4gen\" } } }";
+			Object person = readStreamed(json, personType);
+			assertEquals("Anna", personType.getMethod("name").invoke(person));
+			assertEquals(42, personType.getMethod("age").invoke(person));
+			assertEquals(Arrays.asList("A", "Ann"), personType.getMethod("nicknames").invoke(person));
+			assertEquals(java.util.Optional.empty(), personType.getMethod("height").invoke(person));
+			Object address = personType.getMethod("address").invoke(person);
+			assertEquals("Storgatan", classLoader.loadClass("c.Person$Address").getMethod("street").invoke(address));
+			assertEquals(1, ((Map<?, ?>) personType.getMethod("homes").invoke(person)).size());
+
+			assertEquals(person, readStreamed(json, personType));
+			Object withoutAge = readStreamed("{ \"name\": \"Anna\" }", personType);
+			assertNotEquals(person, withoutAge);
+			assertNotEquals(withoutAge, person);
+			InvocationTargetException missingAge = assertThrows(InvocationTargetException.class, () -> personType.getMethod("age").invoke(withoutAge));
+			assertTrue(missingAge.getCause() instanceof NullPointerException);
+		}
+	}
+
+	@Test
+	public void mapsWithTypedKeysCompileOutsideTwynPackage() throws Exception {
+		Path sources = folder.newFolder("sources").toPath();
+		Path classes = folder.newFolder("classes").toPath();
+		Path source = Files.createDirectories(sources.resolve("d")).resolve("TypedMap.java");
+		Files.write(source, ("package d;\n"
+				+ "@se.jsa.twyn.TwynProxy\n"
+				+ "public interface TypedMap {\n"
+				+ "	java.util.Map<Key, Named> data();\n"
+				+ "	public interface Named {\n"
+				+ "		String name();\n"
+				+ "	}\n"
+				+ "}\n").getBytes(StandardCharsets.UTF_8));
+		Path key = sources.resolve("d").resolve("Key.java");
+		Files.write(key, ("package d;\n"
+				+ "public class Key {\n"
+				+ "	private final String key;\n"
+				+ "	public Key(String key) { this.key = key; }\n"
+				+ "	@Override public String toString() { return key; }\n"
+				+ "}\n").getBytes(StandardCharsets.UTF_8));
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		int result = compiler.run(null, null, null,
+				"-classpath", System.getProperty("java.class.path"),
+				"-processor", TwynProcessor.class.getName(),
+				"-d", classes.toString(),
+				source.toString(), key.toString());
+		assertEquals(0, result);
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, getClass().getClassLoader())) {
+			Class<?> typedMapType = classLoader.loadClass("d.TypedMap");
+			Object typedMap = withContextClassLoader(classLoader,
+					() -> Twyn.configurer().withClassGeneration().configure().read("{ \"data\": { \"k\": { \"name\": \"v\" } } }", typedMapType));
+			assertEquals("d.TypedMapTwynImpl", typedMap.getClass().getName());
+			Map<?, ?> data = (Map<?, ?>) typedMapType.getMethod("data").invoke(typedMap);
+			assertEquals("k", data.keySet().iterator().next().toString());
+			assertEquals("v", classLoader.loadClass("d.TypedMap$Named").getMethod("name").invoke(data.values().iterator().next()));
+		}
+	}
+
+	private static Object withContextClassLoader(ClassLoader classLoader, Callable<Object> action) throws Exception {
+		ClassLoader original = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(classLoader);
+		try {
+			return action.call();
+		} finally {
+			Thread.currentThread().setContextClassLoader(original);
+		}
+	}
+
+	private static Object readStreamed(String json, Class<?> type) throws Exception {
+		try (JsonParser parser = new ObjectMapper().getFactory().createParser(json)) {
+			return Twyn.forTest().readStreamed(parser, type);
+		}
+	}
+
+	private static Path writeSource(Path sources, String packageName, String name) throws Exception {
+		Path source = Files.createDirectories(sources.resolve(packageName)).resolve(name + ".java");
+		Files.write(source, ("package " + packageName + ";\n"
+				+ "@se.jsa.twyn.TwynProxy\n"
+				+ "public interface " + name + " {\n"
+				+ "	Address address();\n"
+				+ "	public interface Address {\n"
+				+ "		String street();\n"
+				+ "	}\n"
+				+ "}\n").getBytes(StandardCharsets.UTF_8));
+		return source;
+	}
 /*
 	@Test
 	public void canGenerateProxyJavaFileWithAP() throws Exception {
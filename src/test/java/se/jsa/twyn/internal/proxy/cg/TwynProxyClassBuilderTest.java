@@ -16,8 +16,16 @@
 package se.jsa.twyn.internal.proxy.cg;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -25,14 +33,16 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import se.jsa.twyn.internal.Cache;
+import se.jsa.twyn.internal.IdentityMethods;
 import se.jsa.twyn.internal.TwynContext;
 import se.jsa.twyn.internal.datamodel.json.TwynJsonNode;
 import se.jsa.twyn.internal.datamodel.json.TwynJsonNodeProducer;
+import se.jsa.twyn.internal.readmodel.ProxiedInterface;
 
 public class TwynProxyClassBuilderTest {
 
 	private final TwynProxyClassBuilder builder = new TwynProxyClassBuilder();
-	private final TwynContext twynContext = new TwynContext(new TwynJsonNodeProducer(new ObjectMapper()), builder, () -> new Cache.None(), true);
+	private final TwynContext twynContext = new TwynContext(new TwynJsonNodeProducer(new ObjectMapper()), builder, size -> new Cache.None(), true);
 
 	@Test
 	public void canResolveValue() throws Exception {
@@ -63,4 +73,54 @@ public class TwynProxyClassBuilderTest {
 		List<StringIF> getStrings();
 	}
 
+	@Test
+	public void precompilesReachableInterfacesInOneCompilation() throws Exception {
+		builder.precompile(Collections.singleton(OuterIF.class), twynContext);
+		JsonNode jsonNode = new ObjectMapper().readTree("{ \"strings\" : [ { \"name\" : \"s1\" } ] }");
+		OuterIF outer = builder.buildProxy(OuterIF.class, twynContext, TwynJsonNode.create(jsonNode));
+		InnerIF inner = builder.buildProxy(InnerIF.class, twynContext, TwynJsonNode.create(jsonNode));
+		assertEquals(outer.getClass().getClassLoader(), inner.getClass().getClassLoader());
+		assertEquals("s1", inner.getStrings()[0].getName());
+	}
+	public static interface OuterIF {
+		InnerIF getInner();
+	}
+	public static interface InnerIF {
+		StringIF[] getStrings();
+	}
+
+	@Test
+	public void nestedProxiesAreCompiledWithTheirParentAndCreatedDirectly() throws Exception {
+		JsonNode jsonNode = new ObjectMapper().readTree("{ \"inner\" : { \"strings\" : [ { \"name\" : \"direct\" } ] } }");
+		DirectIF direct = builder.buildProxy(DirectIF.class, twynContext, TwynJsonNode.create(jsonNode));
+		assertSame(direct.getClass().getClassLoader(), direct.getInner().getClass().getClassLoader());
+		assertSame(direct.getClass().getClassLoader(), direct.getInner().getStrings()[0].getClass().getClassLoader());
+		assertEquals("direct", direct.getInner().getStrings()[0].getName());
+
+		String code = TwynProxyClassJavaFile.create(ProxiedInterface.of(DirectIF.class), TwynProxyClassJavaTemplates.create(), new IdentityMethods(), false,
+				name -> name.equals(InnerIF.class.getCanonicalName()) ? Optional.of("InnerImpl") : Optional.empty()).getCode();
+		assertTrue(code.contains("new InnerImpl(twyn, node)"));
+	}
+	public static interface DirectIF {
+		InnerIF getInner();
+	}
+
+	@Test
+	public void compilesEachTypeOnceWhenRequestedConcurrently() throws Exception {
+		JsonNode jsonNode = new ObjectMapper().readTree("{ \"name\" : \"concurrent\" }");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Class<?>>> classes = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				classes.add(executor.submit(() -> builder.buildProxy(ConcurrentIF.class, twynContext, TwynJsonNode.create(jsonNode)).getClass()));
+			}
+			for (Future<Class<?>> c : classes) {
+				assertSame(classes.get(0).get(), c.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	public static interface ConcurrentIF { String getName(); }
+
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.cg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.jsa.twyn.Twyn;
+
+public class TwynProxySourcesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public interface Library {
+		List<Book> books();
+	}
+
+	public interface Book {
+		String title();
+	}
+
+	@Test
+	public void generatesProxiesForReachableInterfacesAndAnIndex() throws Exception {
+		TwynProxySources sources = TwynProxySources.generate(Collections.singletonList(Library.class));
+
+		assertEquals(new HashSet<>(Arrays.asList(
+					Book.class.getName() + "TwynImpl",
+					Library.class.getName() + "TwynImpl",
+					sources.getIndexClassName())),
+				sources.getSources().keySet());
+		assertEquals(getClass().getPackage().getName(), sources.getIndexClassName().substring(0, sources.getIndexClassName().lastIndexOf('.')));
+	}
+
+	@Test
+	public void generatedProxiesAreUsedByClassGeneration() throws Exception {
+		TwynProxySources sources = TwynProxySources.generate(Collections.singletonList(Library.class));
+		Path sourceDirectory = folder.newFolder("sources").toPath();
+		Path classes = folder.newFolder("classes").toPath();
+		List<String> arguments = new ArrayList<>(Arrays.asList("-classpath", System.getProperty("java.class.path"), "-proc:none", "-d", classes.toString()));
+		for (Map.Entry<String, String> source : sources.getSources().entrySet()) {
+			Path sourceFile = sourceDirectory.resolve(source.getKey().replace('.', '/') + ".java");
+			Files.createDirectories(sourceFile.getParent());
+			Files.write(sourceFile, source.getValue().getBytes(StandardCharsets.UTF_8));
+			arguments.add(sourceFile.toString());
+		}
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+		Path serviceFile = classes.resolve(TwynProxySources.SERVICE_FILE);
+		Files.createDirectories(serviceFile.getParent());
+		Files.write(serviceFile, (sources.getIndexClassName() + "\n").getBytes(StandardCharsets.UTF_8));
+
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, getClass().getClassLoader())) {
+			Thread.currentThread().setContextClassLoader(classLoader);
+			Twyn twyn = Twyn.configurer().withClassGeneration().configure();
+
+			Library library = twyn.read("{ \"books\": [ { \"title\": \"Dune\" } ] }", Library.class);
+			assertSame(classLoader, library.getClass().getClassLoader());
+			assertSame(classLoader, library.books().get(0).getClass().getClassLoader());
+			assertEquals("Dune", library.books().get(0).title());
+		} finally {
+			Thread.currentThread().setContextClassLoader(contextClassLoader);
+		}
+	}
+}
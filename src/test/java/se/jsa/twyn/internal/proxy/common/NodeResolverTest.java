@@ -16,6 +16,7 @@
 package se.jsa.twyn.internal.proxy.common;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -30,6 +31,12 @@ public class NodeResolverTest {
 		assertTrue(NodeResolver.isArrayType(ProxiedInterface.of(ArrayElement.class)));
 		assertFalse(NodeResolver.isArrayType(ProxiedInterface.of(NormalType.class)));
 	}
+	@Test
+	public void resolversAreSharedPerType() throws Exception {
+		assertSame(NodeResolver.getResolver(ProxiedInterface.of(ArrayElement.class)), NodeResolver.getResolver(ProxiedInterface.of(ArrayElement.class)));
+		assertSame(ProxiedType.of(NormalType.class).getNodeResolver(), NodeResolver.getResolver(ProxiedInterface.of(NormalType.class)));
+	}
+
 	public static interface ArrayElement {
 		@ArrayIndex(0) int index();
 		@ArrayIndex(3) String message();
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.internal.proxy.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import se.jsa.twyn.ArrayIndex;
+import se.jsa.twyn.Resolve;
+import se.jsa.twyn.internal.datamodel.Node;
+import se.jsa.twyn.internal.datamodel.json.TwynJsonNodeProducer;
+
+public class ProjectionTest {
+
+	@Test
+	public void reachesResolvedFieldsAndElementsOfReturnedInterfaces() throws Exception {
+		Projection projection = Projection.of(Order.class);
+
+		assertTrue(projection.field("id").isAll());
+		assertNull(projection.field("comment"));
+		assertTrue(projection.field("customer").field("name").isAll());
+		assertNull(projection.field("customer").field("address"));
+		assertTrue(projection.field("lines").element(7).field("quantity").isAll());
+		assertNull(projection.field("lines").element(7).field("note"));
+		assertTrue(projection.field("lines").element(7).field("next").field("next").field("quantity").isAll());
+		assertTrue(projection.field("meta").field("created").field("by").isAll());
+		assertTrue(projection.field("meta").field("created").field("at").isAll());
+		assertNull(projection.field("meta").field("updated"));
+		assertTrue(projection.field("tags").field("any").element(1).isAll());
+		assertNull(projection.field("tags").field("any").element(0));
+		assertTrue(projection.field("extra").field("anything").isAll());
+	}
+
+	@Test
+	public void projectionsAreSharedPerRootType() throws Exception {
+		assertSame(Projection.of(Order.class), Projection.of(Order.class));
+		assertTrue(Projection.of(Order[].class).element(3).field("customer").field("name").isAll());
+	}
+
+	@Test
+	public void projectingProducerOnlyKeepsReachableNodes() throws Exception {
+		String json = "{ \"id\": 1, \"comment\": { \"long\": [1, 2, 3] }, \"customer\": { \"name\": \"c\", \"address\": \"a\" },"
+				+ " \"lines\": [ { \"quantity\": 2, \"note\": \"n\" } ], \"tags\": { \"t\": [\"skipped\", 1.5] } }";
+
+		Node node = new TwynJsonNodeProducer(new ObjectMapper()).withProjection().read(json, Order.class);
+
+		assertEquals(new ObjectMapper().readTree(
+				"{ \"id\": 1, \"customer\": { \"name\": \"c\" }, \"lines\": [ { \"quantity\": 2 } ], \"tags\": { \"t\": [null, 1.5] } }"),
+				new ObjectMapper().readTree(node.toString()));
+	}
+
+	public interface Order {
+		int id();
+		Customer customer();
+		List<Line> lines();
+		@Resolve("meta.created.by") String createdBy();
+		@Resolve("meta.created") Created created();
+		Map<String, Tag> tags();
+		Map<String, Object> extra();
+	}
+	public interface Customer {
+		String name();
+	}
+	public interface Line {
+		int quantity();
+		Line next();
+	}
+	public interface Created {
+		String at();
+	}
+	public interface Tag {
+		@ArrayIndex(1) double weight();
+	}
+}
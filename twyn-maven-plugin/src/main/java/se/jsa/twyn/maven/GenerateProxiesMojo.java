@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import se.jsa.twyn.spi.TwynPrebuiltProxies;
+
+/**
+ * Generates and compiles twyn proxies for interfaces that cannot be annotated with @TwynProxy, typically those of
+ * shared API jars. Proxies are generated for the configured interfaces, the interfaces of the configured packages and
+ * every interface reachable from them, and are registered in the same index as the annotation processor uses, so
+ * withClassGeneration() finds them without compiling anything at runtime.
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.PROCESS_CLASSES, requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
+public class GenerateProxiesMojo extends AbstractMojo {
+
+	/**
+	 * Fully qualified names of the root interfaces
+	 */
+	@Parameter
+	private List<String> interfaces = new ArrayList<>();
+
+	/**
+	 * Packages whose interfaces are all roots, subpackages are not included
+	 */
+	@Parameter
+	private List<String> packages = new ArrayList<>();
+
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/twyn", required = true)
+	private File sourceDirectory;
+
+	@Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+	private File outputDirectory;
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		if (interfaces.isEmpty() && packages.isEmpty()) {
+			getLog().info("No interfaces or packages configured, skipping twyn proxy generation");
+			return;
+		}
+		List<String> classpath = getClasspath();
+		try (URLClassLoader classLoader = new URLClassLoader(toUrls(classpath), getClass().getClassLoader())) {
+			Set<Class<?>> roots = new LinkedHashSet<>();
+			for (String name : interfaces) {
+				roots.add(loadInterface(classLoader, name));
+			}
+			for (String packageName : packages) {
+				roots.addAll(findInterfaces(classLoader, classpath, packageName));
+			}
+
+			TwynPrebuiltProxies sources = TwynPrebuiltProxies.generate(roots);
+			List<Path> sourceFiles = writeSources(sources.getSources());
+			compile(classpath, sourceFiles);
+			register(sources.getIndexClassName());
+			getLog().info("Generated " + (sourceFiles.size() - 1) + " twyn proxies in " + sources.getIndexClassName());
+		} catch (IOException | ReflectiveOperationException | URISyntaxException | IllegalArgumentException e) {
+			throw new MojoExecutionException("Could not generate twyn proxies: " + e.getMessage(), e);
+		}
+	}
+
+	private List<String> getClasspath() throws MojoExecutionException {
+		try {
+			return project.getCompileClasspathElements();
+		} catch (DependencyResolutionRequiredException e) {
+			throw new MojoExecutionException("Could not resolve the compile classpath", e);
+		}
+	}
+
+	private static URL[] toUrls(List<String> classpath) throws MalformedURLException {
+		URL[] urls = new URL[classpath.size()];
+		for (int i = 0; i < urls.length; i++) {
+			urls[i] = new File(classpath.get(i)).toURI().toURL();
+		}
+		return urls;
+	}
+
+	private static Class<?> loadInterface(ClassLoader classLoader, String name) throws ClassNotFoundException, MojoExecutionException {
+		Class<?> type = classLoader.loadClass(name);
+		if (!type.isInterface() || type.isAnnotation()) {
+			throw new MojoExecutionException(name + " is not an interface");
+		}
+		return type;
+	}
+
+	private static Set<Class<?>> findInterfaces(ClassLoader classLoader, List<String> classpath, String packageName) throws IOException, ClassNotFoundException {
+		String packagePath = packageName.replace('.', '/') + "/";
+		Set<String> classNames = new LinkedHashSet<>();
+		for (String element : classpath) {
+			File file = new File(element);
+			if (file.isDirectory()) {
+				Path directory = file.toPath().resolve(packagePath);
+				if (Files.isDirectory(directory)) {
+					try (Stream<Path> files = Files.list(directory)) {
+						files.map(p -> packagePath + p.getFileName()).forEach(entry -> addClassName(entry, packagePath, classNames));
+					}
+				}
+			} else if (file.isFile()) {
+				try (JarFile jar = new JarFile(file)) {
+					for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+						addClassName(entries.nextElement().getName(), packagePath, classNames);
+					}
+				}
+			}
+		}
+		Set<Class<?>> result = new LinkedHashSet<>();
+		for (String className : classNames) {
+			Class<?> type = classLoader.loadClass(className);
+			if (type.isInterface() && !type.isAnnotation()) {
+				result.add(type);
+			}
+		}
+		return result;
+	}
+
+	private static void addClassName(String entry, String packagePath, Set<String> classNames) {
+		if (entry.startsWith(packagePath) && entry.endsWith(".class") && entry.indexOf('/', packagePath.length()) < 0
+				&& !entry.endsWith("package-info.class") && !entry.endsWith("module-info.class")) {
+			classNames.add(entry.substring(0, entry.length() - ".class".length()).replace('/', '.'));
+		}
+	}
+
+	private List<Path> writeSources(Map<String, String> sources) throws IOException {
+		List<Path> sourceFiles = new ArrayList<>();
+		for (Map.Entry<String, String> source : sources.entrySet()) {
+			Path sourceFile = sourceDirectory.toPath().resolve(source.getKey().replace('.', '/') + ".java");
+			Files.createDirectories(sourceFile.getParent());
+			Files.write(sourceFile, source.getValue().getBytes(StandardCharsets.UTF_8));
+			sourceFiles.add(sourceFile);
+		}
+		return sourceFiles;
+	}
+
+	private void compile(List<String> classpath, List<Path> sourceFiles) throws MojoExecutionException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new MojoExecutionException("No java compiler available, run the build with a JDK");
+		}
+		List<String> arguments = new ArrayList<>();
+		arguments.add("-classpath");
+		arguments.add(String.join(File.pathSeparator, classpath));
+		arguments.add("-proc:none");
+		arguments.add("-encoding");
+		arguments.add(StandardCharsets.UTF_8.name());
+		arguments.add("-d");
+		arguments.add(outputDirectory.getAbsolutePath());
+		arguments.addAll(sourceFiles.stream().map(Path::toString).collect(Collectors.toList()));
+		if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+			throw new MojoExecutionException("Could not compile the twyn proxies generated in " + sourceDirectory);
+		}
+	}
+
+	/**
+	 * Adds the index to the service file, keeping the indexes that the annotation processor may have written there
+	 */
+	private void register(String indexClassName) throws IOException {
+		Path serviceFile = outputDirectory.toPath().resolve(TwynPrebuiltProxies.SERVICE_FILE);
+		Set<String> indexes = new LinkedHashSet<>();
+		if (Files.exists(serviceFile)) {
+			Files.readAllLines(serviceFile, StandardCharsets.UTF_8).stream()
+				.map(String::trim)
+				.filter(line -> !line.isEmpty())
+				.forEach(indexes::add);
+		} else {
+			Files.createDirectories(serviceFile.getParent());
+		}
+		indexes.add(indexClassName);
+		Files.write(serviceFile, indexes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Joakim Sahlström
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.jsa.twyn.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.jsa.twyn.spi.TwynPrebuiltProxies;
+
+public class GenerateProxiesMojoTest {
+
+	private static final String PROCESSOR_INDEX = "com.example.app.TwynProxyIndex_processor";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void generatesProxiesForInterfacesOfJarsAndDirectories() throws Exception {
+		Path jar = jar(compile("jar",
+				"package com.example.api; public interface Order { String getId(); java.util.List<Line> getLines(); }",
+				"package com.example.api; public interface Line { int getQuantity(); }"));
+		Path directory = compile("directory",
+				"package com.example.events; public interface Shipped { String getOrderId(); }",
+				"package com.example.events; public class NotAnInterface { }");
+		Path output = folder.newFolder("output").toPath();
+		Path serviceFile = output.resolve(TwynPrebuiltProxies.SERVICE_FILE);
+		Files.createDirectories(serviceFile.getParent());
+		Files.write(serviceFile, Collections.singletonList(PROCESSOR_INDEX), StandardCharsets.UTF_8);
+
+		GenerateProxiesMojo mojo = mojo(output, Arrays.asList(jar, directory));
+		set(mojo, "interfaces", Collections.singletonList("com.example.api.Order"));
+		set(mojo, "packages", Collections.singletonList("com.example.events"));
+		mojo.execute();
+
+		assertTrue(Files.exists(output.resolve("com/example/api/OrderTwynImpl.class")));
+		assertTrue(Files.exists(output.resolve("com/example/api/LineTwynImpl.class")));
+		assertTrue(Files.exists(output.resolve("com/example/events/ShippedTwynImpl.class")));
+		assertFalse(Files.exists(output.resolve("com/example/events/NotAnInterfaceTwynImpl.class")));
+
+		List<String> indexes = Files.readAllLines(serviceFile, StandardCharsets.UTF_8);
+		assertEquals(2, indexes.size());
+		assertEquals(PROCESSOR_INDEX, indexes.get(0));
+		assertTrue(Files.exists(output.resolve(indexes.get(1).replace('.', '/') + ".class")));
+	}
+
+	@Test
+	public void writesServiceFileIfThereIsNone() throws Exception {
+		Path directory = compile("directory", "package com.example.api; public interface Order { String getId(); }");
+		Path output = folder.newFolder("output").toPath();
+
+		GenerateProxiesMojo mojo = mojo(output, Collections.singletonList(directory));
+		set(mojo, "interfaces", Collections.singletonList("com.example.api.Order"));
+		mojo.execute();
+
+		List<String> indexes = Files.readAllLines(output.resolve(TwynPrebuiltProxies.SERVICE_FILE), StandardCharsets.UTF_8);
+		assertEquals(1, indexes.size());
+		assertTrue(indexes.get(0).startsWith("com.example.api.TwynProxyIndex_"));
+	}
+
+	@Test(expected = MojoExecutionException.class)
+	public void rejectsClassesConfiguredAsInterfaces() throws Exception {
+		Path directory = compile("directory", "package com.example.api; public class Order { }");
+
+		GenerateProxiesMojo mojo = mojo(folder.newFolder("output").toPath(), Collections.singletonList(directory));
+		set(mojo, "interfaces", Collections.singletonList("com.example.api.Order"));
+		mojo.execute();
+	}
+
+	private GenerateProxiesMojo mojo(Path output, List<Path> fixtures) throws Exception {
+		List<String> classpath = new ArrayList<>();
+		fixtures.forEach(fixture -> classpath.add(fixture.toString()));
+		classpath.addAll(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+		GenerateProxiesMojo mojo = new GenerateProxiesMojo();
+		set(mojo, "sourceDirectory", folder.newFolder("generated-sources").toPath().toFile());
+		set(mojo, "outputDirectory", output.toFile());
+		set(mojo, "project", new MavenProject() {
+			@Override
+			public List<String> getCompileClasspathElements() {
+				return classpath;
+			}
+		});
+		return mojo;
+	}
+
+	private static void set(GenerateProxiesMojo mojo, String name, Object value) throws ReflectiveOperationException {
+		Field field = GenerateProxiesMojo.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(mojo, value);
+	}
+
+	private Path compile(String name, String... sources) throws IOException {
+		Path sourceDirectory = folder.newFolder(name + "-sources").toPath();
+		Path classes = folder.newFolder(name).toPath();
+		List<String> arguments = new ArrayList<>(Arrays.asList("-proc:none", "-d", classes.toString()));
+		for (String source : sources) {
+			String className = source.replaceAll("(?s)^package ([\\w.]+);.*? (?:interface|class) (\\w+).*", "$1.$2");
+			Path sourceFile = sourceDirectory.resolve(className.replace('.', '/') + ".java");
+			Files.createDirectories(sourceFile.getParent());
+			Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+			arguments.add(sourceFile.toString());
+		}
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+		return classes;
+	}
+
+	private Path jar(Path classes) throws IOException {
+		Path jar = folder.getRoot().toPath().resolve(classes.getFileName() + ".jar");
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+				Stream<Path> files = Files.walk(classes)) {
+			for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+				out.putNextEntry(new JarEntry(classes.relativize(file).toString().replace(File.separatorChar, '/')));
+				Files.copy(file, (OutputStream) out);
+				out.closeEntry();
+			}
+		}
+		return jar;
+	}
+}